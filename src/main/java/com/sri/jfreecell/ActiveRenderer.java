@@ -0,0 +1,136 @@
+package com.sri.jfreecell;
+
+import java.awt.Canvas;
+import java.awt.Graphics;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Active rendering of the board, an alternative to Swing repaints selected at startup with {@value #OPTION}.<br>
+ * A canvas covering the board is drawn by one loop at a fixed rate into a flipping {@link BufferStrategy}, with the
+ * same drawing code as the Swing board. Frame pacing (interval between frames, time spent drawing) is measured and
+ * logged every few seconds, to compare smoothness and CPU use with the default mode.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public final class ActiveRenderer extends Canvas implements Runnable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String OPTION = "--active-rendering";
+
+    private static final int FRAMES_PER_SECOND = 60;
+    private static final long FRAME_NANOS = 1000000000L / FRAMES_PER_SECOND;
+    private static final long LOG_NANOS = 5000000000L;
+
+    private final UICardPanel board;
+    private volatile boolean running;
+    private Thread thread;
+
+    // Frame pacing of the current log period.
+    private int frames;
+    private long intervalSum;
+    private long intervalMax;
+    private long renderSum;
+
+    ActiveRenderer(UICardPanel board) {
+        this.board = board;
+        setIgnoreRepaint(true);
+        setBackground(UICardPanel.BACKGROUND_COLOR);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        createBufferStrategy(2);
+        running = true;
+        thread = new Thread(this, "active-renderer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        super.removeNotify();
+    }
+
+    // The loop draws everything.
+    @Override
+    public void paint(Graphics g) {
+    }
+
+    @Override
+    public void update(Graphics g) {
+    }
+
+    @Override
+    public void run() {
+        BufferStrategy strategy = getBufferStrategy();
+        long next = System.nanoTime();
+        long last = next;
+        long logStart = next;
+        while (running) {
+            long start = System.nanoTime();
+            render(strategy);
+            long end = System.nanoTime();
+
+            frames++;
+            renderSum += end - start;
+            if (frames > 1) {
+                intervalSum += start - last;
+                intervalMax = Math.max(intervalMax, start - last);
+            }
+            last = start;
+            if (end - logStart >= LOG_NANOS) {
+                logPacing(end - logStart);
+                logStart = end;
+            }
+
+            next += FRAME_NANOS;
+            if (next < end) {
+                // Too late for this frame, do not try to catch up.
+                next = end;
+            }
+            LockSupport.parkNanos(next - end);
+        }
+    }
+
+    private void render(BufferStrategy strategy) {
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    // Paints from the board snapshot, never from piles and views the EDT is changing.
+                    board.paintBoard(g);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    private void logPacing(long periodNanos) {
+        if (frames > 1) {
+            System.out.printf("Active rendering: %.1f fps, frame interval avg %.2f ms max %.2f ms, draw avg %.2f ms%n",
+                frames * 1e9 / periodNanos, intervalSum / 1e6 / (frames - 1), intervalMax / 1e6,
+                renderSum / 1e6 / frames);
+        }
+        frames = 0;
+        intervalSum = 0;
+        intervalMax = 0;
+        renderSum = 0;
+    }
+}
@@ -0,0 +1,38 @@
+package com.sri.jfreecell;
+
+/**
+ * Object whose properties are animated by the {@link AnimationClock}. The clock sets the values with a plain call,
+ * the object applying them with its own setters.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+interface Animated {
+
+    /** Position: x and y. */
+    int POSITION = 0;
+    /** Opacity of the highlight. */
+    int OPACITY = 1;
+    /** No value, only called once per frame. */
+    int FRAME = 2;
+
+    /**
+     * Applies the values of a property for the current frame.
+     *
+     * @param property
+     * @param a
+     *            first value, x for a position
+     * @param b
+     *            second value, y for a position
+     */
+    void animate(int property, float a, float b);
+
+    /**
+     * Called when the animation of a property ends.
+     *
+     * @param property
+     * @param completed
+     *            true if it ran to its end, false if cancelled or replaced
+     */
+    void animationEnded(int property, boolean completed);
+}
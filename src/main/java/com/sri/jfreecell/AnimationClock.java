@@ -0,0 +1,318 @@
+package com.sri.jfreecell;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Single clock of all the animations of the game: card moves and bounces, blinks of cards and piles, the steps of the
+ * win sequence and the frames of the fireworks.<br>
+ * One Swing timer ticks on the event thread while any animation is active and stops when the last one ends, so an idle
+ * board costs nothing. At each tick, every active animation is advanced with the same time and applied through
+ * {@link Animated#animate(int, float, float)}, without reflection. Animations are key frames of one or two values,
+ * held in a list of pooled objects; starting an animation of a property replaces the one running for it.<br>
+ * Animations can be started and cancelled from any thread.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+final class AnimationClock {
+
+    private static final int FRAME_MILLIS = 15;
+    private static final int MAX_KEYS = 9;
+    private static final float[] LINEAR = { 0f, 1f };
+
+    /** Blink of a card or pile: the highlight pulses twice. */
+    static final long BLINK_MILLIS = 2000;
+    static final float[] BLINK_TIMES = { 0f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f, 0.7f, 0.8f, 1f };
+    static final float[] BLINK_OPACITIES = { 1f, 0.75f, 0.5f, 0.75f, 1f, 0.75f, 0.5f, 0.75f, 1f };
+
+    private static final AnimationClock INSTANCE = new AnimationClock();
+
+    /**
+     * An animation of a property of a target, or a task to run once at a given time.
+     */
+    private static final class Tween {
+        Animated target;
+        int property;
+        Runnable task;
+        /** Time it starts at, delay included. */
+        long start;
+        long duration;
+        /** Amount of the ease in and out, 0 for a linear animation. */
+        float ease;
+        int keys;
+        final float[] times = new float[MAX_KEYS];
+        final float[] a = new float[MAX_KEYS];
+        final float[] b = new float[MAX_KEYS];
+    }
+
+    private final ArrayList<Tween> active = new ArrayList<Tween>();
+    private final ArrayDeque<Tween> pool = new ArrayDeque<Tween>();
+    private final Timer timer;
+
+    private AnimationClock() {
+        timer = new Timer(FRAME_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                tick();
+            }
+        });
+        timer.setCoalesce(true);
+    }
+
+    static AnimationClock getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Animates a property from one value to another, linearly.
+     *
+     * @param target
+     * @param property
+     * @param duration
+     *            ms
+     * @param fromA
+     * @param fromB
+     * @param toA
+     * @param toB
+     */
+    synchronized void animate(Animated target, int property, long duration, float fromA, float fromB, float toA,
+        float toB) {
+        Tween t = add(target, property, 0, duration, 0f);
+        copy(t, LINEAR, null, null);
+        t.a[0] = fromA;
+        t.b[0] = fromB;
+        t.a[1] = toA;
+        t.b[1] = toB;
+    }
+
+    /**
+     * Animates a property through key frames.
+     *
+     * @param target
+     * @param property
+     * @param delay
+     *            ms before it starts; the property keeps its value until then
+     * @param duration
+     *            ms
+     * @param ease
+     *            amount of ease in and out, 0 for none
+     * @param times
+     *            key times, from 0 to 1
+     * @param a
+     *            first value at each key time
+     * @param b
+     *            second value at each key time, or null
+     */
+    synchronized void animate(Animated target, int property, long delay, long duration, float ease, float[] times,
+        float[] a, float[] b) {
+        copy(add(target, property, delay, duration, ease), times, a, b);
+    }
+
+    /**
+     * Calls a target at every frame until cancelled, with the {@link Animated#FRAME} property and the seconds elapsed
+     * as first value.
+     *
+     * @param target
+     */
+    synchronized void loop(Animated target) {
+        add(target, Animated.FRAME, 0, Long.MAX_VALUE, 0f);
+    }
+
+    /**
+     * Runs a task on the event thread after a delay, as a step of a sequence of animations.
+     *
+     * @param delay
+     *            ms
+     * @param task
+     */
+    synchronized void schedule(long delay, Runnable task) {
+        Tween t = obtain();
+        t.task = task;
+        t.start = System.nanoTime() + delay * 1000000L;
+        start(t);
+    }
+
+    /**
+     * Stops the animation of a property where it is, if any.
+     *
+     * @param target
+     * @param property
+     */
+    synchronized void cancel(Animated target, int property) {
+        int i = indexOf(target, property);
+        if (i >= 0) {
+            Tween t = removeAt(i);
+            t.target.animationEnded(property, false);
+            release(t);
+        }
+    }
+
+    /**
+     * Brings the animation of a property to its end at once, if any.
+     *
+     * @param target
+     * @param property
+     */
+    synchronized void finish(Animated target, int property) {
+        int i = indexOf(target, property);
+        if (i >= 0) {
+            Tween t = removeAt(i);
+            apply(t, 1f);
+            t.target.animationEnded(property, true);
+            release(t);
+        }
+    }
+
+    /**
+     * Tells whether a property is animated, its delay included.
+     *
+     * @param target
+     * @param property
+     * @return true if animated
+     */
+    synchronized boolean isAnimating(Animated target, int property) {
+        return indexOf(target, property) >= 0;
+    }
+
+    private Tween add(Animated target, int property, long delay, long duration, float ease) {
+        cancel(target, property);
+        Tween t = obtain();
+        t.target = target;
+        t.property = property;
+        t.start = System.nanoTime() + delay * 1000000L;
+        t.duration = duration == Long.MAX_VALUE ? Long.MAX_VALUE : duration * 1000000L;
+        t.ease = ease;
+        start(t);
+        return t;
+    }
+
+    private static void copy(Tween t, float[] times, float[] a, float[] b) {
+        t.keys = times.length;
+        for (int k = 0; k < t.keys; k++) {
+            t.times[k] = times[k];
+            t.a[k] = a != null ? a[k] : 0f;
+            t.b[k] = b != null ? b[k] : 0f;
+        }
+    }
+
+    private Tween obtain() {
+        Tween t = pool.poll();
+        return t != null ? t : new Tween();
+    }
+
+    private void release(Tween t) {
+        t.target = null;
+        t.task = null;
+        pool.push(t);
+    }
+
+    private void start(Tween t) {
+        active.add(t);
+        if (!timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    private int indexOf(Animated target, int property) {
+        for (int i = 0; i < active.size(); i++) {
+            Tween t = active.get(i);
+            if (t.target == target && t.property == property) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes an animation, moving the last one in its place.
+     */
+    private Tween removeAt(int i) {
+        int last = active.size() - 1;
+        Tween t = active.get(i);
+        active.set(i, active.get(last));
+        active.remove(last);
+        return t;
+    }
+
+    /**
+     * Advances all animations to the current time, on the event thread.
+     */
+    private synchronized void tick() {
+        long now = System.nanoTime();
+        int i = 0;
+        while (i < active.size()) {
+            Tween t = active.get(i);
+            if (now < t.start) {
+                i++;
+                continue;
+            }
+            long elapsed = now - t.start;
+            if (t.task != null) {
+                removeAt(i);
+                // Out of the tick, as a step may open a dialog.
+                SwingUtilities.invokeLater(t.task);
+                release(t);
+            } else if (elapsed >= t.duration) {
+                removeAt(i);
+                apply(t, 1f);
+                t.target.animationEnded(t.property, true);
+                release(t);
+            } else {
+                apply(t, t.property == Animated.FRAME ? elapsed / 1e9f : (float) elapsed / t.duration);
+                i++;
+            }
+        }
+        if (active.isEmpty()) {
+            timer.stop();
+        }
+    }
+
+    private static void apply(Tween t, float fraction) {
+        if (t.property == Animated.FRAME) {
+            t.target.animate(t.property, fraction, 0f);
+            return;
+        }
+        float f = t.ease > 0 ? ease(fraction, t.ease) : fraction;
+        int k = 0;
+        while (k < t.keys - 2 && f > t.times[k + 1]) {
+            k++;
+        }
+        float span = t.times[k + 1] - t.times[k];
+        float local = span > 0 ? Math.max(0f, Math.min(1f, (f - t.times[k]) / span)) : 1f;
+        t.target.animate(t.property, t.a[k] + (t.a[k + 1] - t.a[k]) * local,
+            t.b[k] + (t.b[k + 1] - t.b[k]) * local);
+    }
+
+    /**
+     * Ease in and out along the Bezier curve with control points (amount, 0) and (1 - amount, 1).
+     *
+     * @param x
+     *            fraction of the time
+     * @param amount
+     * @return fraction of the animation
+     */
+    static float ease(float x, float amount) {
+        // Finds the curve parameter for x by bisection; x(t) grows with t.
+        float lo = 0f, hi = 1f, t = x;
+        for (int i = 0; i < 20; i++) {
+            t = (lo + hi) / 2;
+            if (bezier(t, amount, 1 - amount) < x) {
+                lo = t;
+            } else {
+                hi = t;
+            }
+        }
+        return bezier(t, 0f, 1f);
+    }
+
+    private static float bezier(float t, float p1, float p2) {
+        float u = 1 - t;
+        return 3 * u * u * t * p1 + 3 * u * t * t * p2 + t * t * t;
+    }
+}
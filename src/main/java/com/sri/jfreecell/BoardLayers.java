@@ -0,0 +1,224 @@
+package com.sri.jfreecell;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+
+import com.sri.jfreecell.util.GraphicsUtil;
+
+/**
+ * Cached images the board is composed from.<br>
+ * A static layer holds the background and the pile outlines. Each pile has its own layer, a copy of its area of the
+ * background with its cards drawn on it; it is drawn again only when the cards of the pile, or their positions, are
+ * not those it was drawn with. Piles whose cards are animated, highlighted or dragged are live: they are drawn card by
+ * card on top of the layers. A frame with a single moving card then costs one blit per layer plus that card.<br>
+ * The images have the resolution of the screen, so the board stays sharp on a scaled HiDPI screen.<br>
+ * Everything drawn is taken from a {@link BoardSnapshot}, never from the piles and views, so painting can run on
+ * another thread than the game. The images are made again when the snapshot brings another {@link BoardLayout}; they
+ * belong to the painting thread alone.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+final class BoardLayers {
+
+    private static final int NO_OF_PILES = 16;
+    /** Pile indexes in drawing order: tableau, free cells, foundation. */
+    private static final int[] ORDER = { 8, 9, 10, 11, 12, 13, 14, 15, 4, 5, 6, 7, 0, 1, 2, 3 };
+    private static final int FIRST_FREECELL = 4;
+    private static final int FIRST_TABLEAU = 8;
+    /** Room around a card image taken by the highlight outline. */
+    private static final int MARGIN = 2;
+
+    /** Layout the images were made for. */
+    private BoardLayout layout;
+    private BufferedImage background;
+    /** Device pixels per board pixel of the images. */
+    private double scale = 1;
+    private final BufferedImage[] layers = new BufferedImage[NO_OF_PILES];
+    private final Rectangle[] bounds = new Rectangle[NO_OF_PILES];
+    /** No of cards, then id, position and face of each card, as drawn in each layer. */
+    private final int[][] drawn = new int[NO_OF_PILES][1 + 4 * Card.NO_OF_CARDS];
+    private final boolean[] live = new boolean[NO_OF_PILES];
+    /** Outline of a pile or card, reused by every paint. */
+    private final RoundRectangle2D.Float outline = new RoundRectangle2D.Float();
+
+    /**
+     * Paints the board, but the dragged card, drawn later by {@link #paintDragged(Graphics, BoardSnapshot)}.
+     * 
+     * @param g
+     * @param board
+     *            state to paint
+     */
+    void paint(Graphics g, BoardSnapshot board) {
+        if (board.getLayout() != layout) {
+            createBackground(board.getLayout());
+        }
+        g.drawImage(background, 0, 0, layout.getWidth(), layout.getHeight(), null);
+        for (int i : ORDER) {
+            live[i] = i == board.getDraggedPile() || board.isPileHighlighted(i) || isLive(board, i);
+            Rectangle r = bounds[i];
+            if (!live[i] && g.hitClip(r.x, r.y, r.width, r.height)) {
+                update(board, i);
+                g.drawImage(layers[i], r.x, r.y, r.width, r.height, null);
+            }
+        }
+        for (int i : ORDER) {
+            if (live[i]) {
+                if (board.isPileHighlighted(i)) {
+                    drawPile(g, board, i);
+                }
+                drawCards(g, board, i, board.getDraggedCard());
+            }
+        }
+    }
+
+    /**
+     * Paints the dragged card, if any, and the cards over it, on top of the board.
+     * 
+     * @param g
+     * @param board
+     */
+    void paintDragged(Graphics g, BoardSnapshot board) {
+        int pile = board.getDraggedPile();
+        if (pile < 0) {
+            return;
+        }
+        for (int i = board.indexOf(pile, board.getDraggedCard()); i >= 0 && i < board.size(pile); i++) {
+            drawCard(g, board, board.get(pile, i));
+        }
+    }
+
+    private boolean isLive(BoardSnapshot board, int pile) {
+        for (int i = 0; i < board.size(pile); i++) {
+            if (board.isLive(board.get(pile, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void createBackground(BoardLayout layout) {
+        this.layout = layout;
+        int width = layout.getWidth();
+        int height = layout.getHeight();
+        scale = layout.getDeviceScale();
+        background = createImage(width, height);
+        Graphics2D g2 = background.createGraphics();
+        g2.scale(scale, scale);
+        g2.setColor(UICardPanel.BACKGROUND_COLOR);
+        g2.fillRect(0, 0, width, height);
+        g2.setColor(Color.BLACK);
+        for (int i = 0; i < NO_OF_PILES; i++) {
+            Rectangle loc = layout.getPile(i);
+            outline.setRoundRect(loc.x, loc.y, loc.width, loc.height, 10, 10);
+            g2.draw(outline);
+            // Columns grow down to the bottom of the board.
+            int layerHeight = i >= FIRST_TABLEAU ? Math.max(loc.height + 1, height - loc.y) : loc.height + 1;
+            bounds[i] = new Rectangle(loc.x, loc.y, loc.width + 1, Math.max(1, layerHeight));
+            layers[i] = createImage(bounds[i].width, bounds[i].height);
+            drawn[i][0] = -1;
+        }
+        g2.dispose();
+    }
+
+    /**
+     * Draws the layer of a pile again if its cards changed since it was drawn.
+     */
+    private void update(BoardSnapshot board, int index) {
+        int[] state = drawn[index];
+        int size = board.size(index);
+        boolean same = state[0] == size;
+        state[0] = size;
+        for (int i = 0, k = 1; i < size; i++, k += 4) {
+            int card = board.get(index, i);
+            int x = board.getX(card);
+            int y = board.getY(card);
+            int face = board.isFaceUp(card) ? 1 : 0;
+            same &= state[k] == card && state[k + 1] == x && state[k + 2] == y && state[k + 3] == face;
+            state[k] = card;
+            state[k + 1] = x;
+            state[k + 2] = y;
+            state[k + 3] = face;
+        }
+        if (same) {
+            return;
+        }
+        Rectangle r = bounds[index];
+        Graphics2D g2 = layers[index].createGraphics();
+        g2.scale(scale, scale);
+        g2.translate(-r.x, -r.y);
+        g2.drawImage(background, 0, 0, layout.getWidth(), layout.getHeight(), null);
+        drawCards(g2, board, index, -1);
+        g2.dispose();
+    }
+
+    private void drawCards(Graphics g, BoardSnapshot board, int index, int dragged) {
+        int size = board.size(index);
+        if (size == 0) {
+            return;
+        }
+        if (index >= FIRST_FREECELL && index < FIRST_TABLEAU) {
+            int card = board.get(index, size - 1);
+            if (card != dragged) {
+                // ... Draw only non-dragged card.
+                drawCard(g, board, card);
+            }
+        } else {
+            // ... Draw all cards except dragged card.
+            for (int i = 0; i < size; i++) {
+                int card = board.get(index, i);
+                if (card == dragged) {
+                    break;
+                }
+                drawCard(g, board, card);
+            }
+        }
+    }
+
+    private void drawCard(Graphics g, BoardSnapshot board, int card) {
+        int x = board.getX(card);
+        int y = board.getY(card);
+        int width = layout.getCardWidth();
+        int height = layout.getCardHeight();
+        if (!g.hitClip(x - MARGIN, y - MARGIN, width + 2 * MARGIN, height + 2 * MARGIN)) {
+            return;
+        }
+        if (board.isFaceUp(card)) {
+            CardAtlas.getInstance().drawFace(g, card, x, y, width, height);
+            if (board.isHighlighted(card)) {
+                outline.setRoundRect(x - 1, y - 1, width + 1, height + 1, 10, 10);
+                GraphicsUtil.drawOutline(g, outline, board.getColor(card), board.getOpacity(card));
+            }
+        } else {
+            CardAtlas.getInstance().drawBack(g, x, y, width, height);
+        }
+    }
+
+    /**
+     * Draws the blink outline of a pile.
+     */
+    private void drawPile(Graphics g, BoardSnapshot board, int index) {
+        Rectangle loc = layout.getPile(index);
+        // Room for the blink outline.
+        if (!g.hitClip(loc.x - 2, loc.y - 2, loc.width + 5, loc.height + 5)) {
+            return;
+        }
+        outline.setRoundRect(loc.x, loc.y, loc.width, loc.height, 10, 10);
+        GraphicsUtil.drawOutline(g, outline, board.getPileColor(index), board.getPileOpacity(index));
+    }
+
+    private BufferedImage createImage(int width, int height) {
+        int deviceWidth = Math.max(1, (int) Math.ceil(width * scale));
+        int deviceHeight = Math.max(1, (int) Math.ceil(height * scale));
+        GraphicsConfiguration gc = layout.getGraphicsConfiguration();
+        if (gc != null) {
+            return gc.createCompatibleImage(deviceWidth, deviceHeight);
+        }
+        return new BufferedImage(deviceWidth, deviceHeight, BufferedImage.TYPE_INT_RGB);
+    }
+}
@@ -0,0 +1,86 @@
+package com.sri.jfreecell;
+
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+
+/**
+ * Immutable placement of a board: its size, the screen it is on, the size of the cards and the area of each pile.<br>
+ * The board makes a new one whenever it is laid out again or the card images change, and hands it to the painter in
+ * the {@link BoardSnapshot}; the painter rebuilds its cached images when it gets another one.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+final class BoardLayout {
+
+    private final int width;
+    private final int height;
+    private final GraphicsConfiguration graphicsConfiguration;
+    private final double deviceScale;
+    private final int cardWidth;
+    private final int cardHeight;
+    private final Rectangle[] piles;
+
+    /**
+     * @param width
+     * @param height
+     * @param gc
+     *            screen of the board, or null when not shown
+     * @param cardWidth
+     * @param cardHeight
+     * @param piles
+     *            area of each pile, in {@link GameModel#getPile(int)} order; copied
+     */
+    BoardLayout(int width, int height, GraphicsConfiguration gc, int cardWidth, int cardHeight, Rectangle[] piles) {
+        this.width = width;
+        this.height = height;
+        this.graphicsConfiguration = gc;
+        this.deviceScale = gc != null ? gc.getDefaultTransform().getScaleX() : 1;
+        this.cardWidth = cardWidth;
+        this.cardHeight = cardHeight;
+        this.piles = new Rectangle[piles.length];
+        for (int i = 0; i < piles.length; i++) {
+            this.piles[i] = new Rectangle(piles[i]);
+        }
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    GraphicsConfiguration getGraphicsConfiguration() {
+        return graphicsConfiguration;
+    }
+
+    /**
+     * Gets the device pixels per board pixel of the screen.
+     *
+     * @return scale, 1 when not shown
+     */
+    double getDeviceScale() {
+        return deviceScale;
+    }
+
+    int getCardWidth() {
+        return cardWidth;
+    }
+
+    int getCardHeight() {
+        return cardHeight;
+    }
+
+    /**
+     * Gets the area of a pile.
+     *
+     * @param pile
+     *            pile index
+     * @return area, shared: not to be changed
+     */
+    Rectangle getPile(int pile) {
+        return piles[pile];
+    }
+}
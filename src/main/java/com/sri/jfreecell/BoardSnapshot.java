@@ -0,0 +1,188 @@
+package com.sri.jfreecell;
+
+import java.awt.Color;
+import java.util.List;
+
+/**
+ * Immutable copy of everything a frame of the board shows: the cards of every pile, in {@link GameModel#getPile(int)}
+ * order, the position, face and highlight of every card, the highlight of every pile, the dragged card and the
+ * {@link BoardLayout}.<br>
+ * The model takes one on the event thread after each batch of changes and publishes it through a single volatile
+ * reference; a painter takes the current one once per frame and reads nothing else, so a frame never shows a change
+ * half done and never reads state while the game changes it.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+final class BoardSnapshot {
+
+    private static final byte FACE_UP = 1;
+    private static final byte HIGHLIGHT = 2;
+    private static final byte LIVE = 4;
+
+    private final byte[][] piles;
+    private final boolean[] pileHighlight;
+    private final float[] pileOpacity;
+    private final Color[] pileColor;
+
+    private final int[] x = new int[Card.NO_OF_CARDS];
+    private final int[] y = new int[Card.NO_OF_CARDS];
+    private final byte[] flags = new byte[Card.NO_OF_CARDS];
+    private final float[] opacity = new float[Card.NO_OF_CARDS];
+    private final Color[] color = new Color[Card.NO_OF_CARDS];
+
+    private final BoardLayout layout;
+    private final boolean blackScreen;
+    private final int draggedPile;
+    private final int draggedCard;
+
+    /**
+     * Copies the state of a board, on the thread that changes it.
+     *
+     * @param piles
+     * @param views
+     *            views indexed by card id
+     * @param layout
+     *            placement of the board, or null before it is laid out
+     * @param blackScreen
+     *            victory screen shown
+     * @param draggedPile
+     *            pile of the dragged card, or -1
+     * @param draggedCard
+     *            id of the dragged card, or -1
+     */
+    BoardSnapshot(List<CardPile> piles, CardView[] views, BoardLayout layout, boolean blackScreen, int draggedPile,
+        int draggedCard) {
+        int count = piles.size();
+        this.piles = new byte[count][];
+        pileHighlight = new boolean[count];
+        pileOpacity = new float[count];
+        pileColor = new Color[count];
+        for (int i = 0; i < count; i++) {
+            CardPile pile = piles.get(i);
+            this.piles[i] = pile.toIds();
+            pileHighlight[i] = pile.isHighlighted();
+            pileOpacity[i] = pile.getOpacity();
+            pileColor[i] = pile.getBackgroundColor();
+        }
+        for (int id = 0; id < views.length; id++) {
+            CardView view = views[id];
+            x[id] = view.getX();
+            y[id] = view.getY();
+            flags[id] = (byte) ((view.isFaceUp() ? FACE_UP : 0) | (view.isHighlighted() ? HIGHLIGHT : 0)
+                | (view.isLive() ? LIVE : 0));
+            opacity[id] = view.getOpacity();
+            color[id] = view.getBackgroundColor();
+        }
+        this.layout = layout;
+        this.blackScreen = blackScreen;
+        this.draggedPile = draggedPile;
+        this.draggedCard = draggedCard;
+    }
+
+    int size(int pile) {
+        return piles[pile].length;
+    }
+
+    /**
+     * Gets a card of a pile.
+     *
+     * @param pile
+     * @param index
+     *            0 for the bottom card
+     * @return card id
+     */
+    int get(int pile, int index) {
+        return piles[pile][index];
+    }
+
+    /**
+     * Gets the position of a card in a pile.
+     *
+     * @param pile
+     * @param card
+     *            card id
+     * @return index, or -1 if the card is not in the pile
+     */
+    int indexOf(int pile, int card) {
+        byte[] cards = piles[pile];
+        for (int i = 0; i < cards.length; i++) {
+            if (cards[i] == card) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    boolean isPileHighlighted(int pile) {
+        return pileHighlight[pile];
+    }
+
+    float getPileOpacity(int pile) {
+        return pileOpacity[pile];
+    }
+
+    Color getPileColor(int pile) {
+        return pileColor[pile];
+    }
+
+    int getX(int card) {
+        return x[card];
+    }
+
+    int getY(int card) {
+        return y[card];
+    }
+
+    boolean isFaceUp(int card) {
+        return (flags[card] & FACE_UP) != 0;
+    }
+
+    boolean isHighlighted(int card) {
+        return (flags[card] & HIGHLIGHT) != 0;
+    }
+
+    /**
+     * Tells whether a card is animated or highlighted, and so is not drawn from a cached image.
+     *
+     * @param card
+     * @return true if live
+     */
+    boolean isLive(int card) {
+        return (flags[card] & LIVE) != 0;
+    }
+
+    float getOpacity(int card) {
+        return opacity[card];
+    }
+
+    Color getColor(int card) {
+        return color[card];
+    }
+
+    BoardLayout getLayout() {
+        return layout;
+    }
+
+    boolean isBlackScreen() {
+        return blackScreen;
+    }
+
+    /**
+     * Gets the pile of the dragged card.
+     *
+     * @return pile index, or -1 if no card is dragged
+     */
+    int getDraggedPile() {
+        return draggedPile;
+    }
+
+    /**
+     * Gets the dragged card, drawn on top of the board with the cards over it.
+     *
+     * @return card id, or -1
+     */
+    int getDraggedCard() {
+        return draggedCard;
+    }
+}
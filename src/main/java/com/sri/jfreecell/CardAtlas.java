@@ -0,0 +1,353 @@
+package com.sri.jfreecell;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.sri.jfreecell.util.ImageUtil;
+
+/**
+ * Process-wide sprite sheet of the card images.<br>
+ * All 53 images are decoded once, in parallel, and copied into a single image compatible with the screen, so drawing
+ * a card is a plain blit of its region.<br>
+ * When the board is resized, a second sheet with the cards at the new size, in device pixels, is built in background
+ * (see {@link #prepareSize}); until it is ready, the cards are scaled on the fly from the current one.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public final class CardAtlas {
+
+    private static final String IMAGE_PATH = "cardimages/";
+    private static final int COLUMNS = 13;
+    private static final int BACK_INDEX = Card.NO_OF_CARDS;
+
+    private static final FutureTask<CardAtlas> LOADER = new FutureTask<CardAtlas>(new Callable<CardAtlas>() {
+        @Override
+        public CardAtlas call() throws Exception {
+            return new CardAtlas();
+        }
+    });
+
+    private final BufferedImage atlas;
+    private final int cardWidth;
+    private final int cardHeight;
+
+    /** Sheet the cards are drawn from, the loaded atlas until another size is prepared. */
+    private volatile Sprites sprites;
+    /** Last size asked for, in device pixels; a scaling for an older one is dropped. */
+    private int requestedWidth;
+    private int requestedHeight;
+    private final ExecutorService scaler = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "card-scaler");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Card images of one size: region of a card in the sheet, and size it is meant to be drawn at.
+     */
+    private static final class Sprites {
+        final BufferedImage sheet;
+        final int width;
+        final int height;
+        final int deviceWidth;
+        final int deviceHeight;
+
+        Sprites(BufferedImage sheet, int width, int height, int deviceWidth, int deviceHeight) {
+            this.sheet = sheet;
+            this.width = width;
+            this.height = height;
+            this.deviceWidth = deviceWidth;
+            this.deviceHeight = deviceHeight;
+        }
+    }
+
+    private CardAtlas() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        BufferedImage[] images = decodeAll();
+        cardWidth = images[BACK_INDEX].getWidth();
+        cardHeight = images[BACK_INDEX].getHeight();
+
+        int rows = (images.length + COLUMNS - 1) / COLUMNS;
+        atlas = createCompatibleImage(COLUMNS * cardWidth, rows * cardHeight);
+        Graphics2D g2 = atlas.createGraphics();
+        for (int i = 0; i < images.length; i++) {
+            g2.drawImage(images[i], getSourceX(i), getSourceY(i), null);
+        }
+        g2.dispose();
+        sprites = new Sprites(atlas, cardWidth, cardHeight, cardWidth, cardHeight);
+        requestedWidth = cardWidth;
+        requestedHeight = cardHeight;
+        System.out.println("Card images loaded in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Starts loading the images in background, if not already started.
+     */
+    public static void preload() {
+        Thread loader = new Thread(LOADER, "card-atlas-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Gets the atlas, waiting for it to be loaded.
+     *
+     * @return atlas
+     */
+    public static CardAtlas getInstance() {
+        LOADER.run(); // No-op if already loading or loaded.
+        try {
+            return LOADER.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading card images", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to load card images", e.getCause());
+        }
+    }
+
+    /**
+     * Reads the card size from the header of the back image, without decoding any image, so the layout is known
+     * before the atlas is loaded.
+     *
+     * @return card size
+     */
+    static Dimension readCardSize() {
+        URL url = CardAtlas.class.getClassLoader().getResource(IMAGE_PATH + getFileName(BACK_INDEX));
+        try (InputStream is = url.openStream(); ImageInputStream in = ImageIO.createImageInputStream(is)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("No reader for " + url);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read card image size", e);
+        }
+    }
+
+    private static BufferedImage[] decodeAll() throws IOException, InterruptedException {
+        final ClassLoader clsldr = CardAtlas.class.getClassLoader();
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "card-image-decoder");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            List<Future<BufferedImage>> futures = new ArrayList<Future<BufferedImage>>();
+            for (int i = 0; i <= BACK_INDEX; i++) {
+                final URL url = clsldr.getResource(IMAGE_PATH + getFileName(i));
+                futures.add(pool.submit(new Callable<BufferedImage>() {
+                    @Override
+                    public BufferedImage call() throws IOException {
+                        BufferedImage img = ImageIO.read(url);
+                        BufferedImage compatible = createCompatibleImage(img.getWidth(), img.getHeight());
+                        Graphics2D g2 = compatible.createGraphics();
+                        g2.drawImage(img, 0, 0, null);
+                        g2.dispose();
+                        return compatible;
+                    }
+                }));
+            }
+            BufferedImage[] images = new BufferedImage[futures.size()];
+            for (int i = 0; i < images.length; i++) {
+                try {
+                    images[i] = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Unable to read " + getFileName(i), e.getCause());
+                }
+            }
+            return images;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * File naming convention of the card images.
+     *
+     * @param index
+     *            card id (suit ordinal * 13 + face ordinal), or 52 for the back image
+     * @return file name
+     */
+    private static String getFileName(int index) {
+        if (index == BACK_INDEX) {
+            return "b.gif";
+        }
+        char faceChar = "a23456789tjqk".charAt(index % COLUMNS);
+        char suitChar = "cdhs".charAt(index / COLUMNS);
+        return "" + faceChar + suitChar + ".gif";
+    }
+
+    private static BufferedImage createCompatibleImage(int width, int height) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration();
+            return gc.createCompatibleImage(width, height, Transparency.BITMASK);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private static int getSourceX(int index, int width) {
+        return (index % COLUMNS) * width;
+    }
+
+    private static int getSourceY(int index, int height) {
+        return (index / COLUMNS) * height;
+    }
+
+    private int getSourceX(int index) {
+        return getSourceX(index, cardWidth);
+    }
+
+    private int getSourceY(int index) {
+        return getSourceY(index, cardHeight);
+    }
+
+    public int getCardWidth() {
+        return cardWidth;
+    }
+
+    public int getCardHeight() {
+        return cardHeight;
+    }
+
+    /**
+     * Prepares the cards for drawing at a size. The scaled sheet is built in background, unless the size is the one
+     * of the images; the callback is then run on that thread. Asking again for the current size does nothing.
+     *
+     * @param width
+     *            card width on the board
+     * @param height
+     *            card height on the board
+     * @param deviceScale
+     *            device pixels per board pixel, 2 on a HiDPI screen scaled by 200%
+     * @param onReady
+     *            callback once drawing uses the new sheet, or null
+     */
+    public void prepareSize(final int width, final int height, double deviceScale, final Runnable onReady) {
+        final int deviceWidth = (int) Math.round(width * deviceScale);
+        final int deviceHeight = (int) Math.round(height * deviceScale);
+        synchronized (this) {
+            if (deviceWidth == requestedWidth && deviceHeight == requestedHeight) {
+                return;
+            }
+            requestedWidth = deviceWidth;
+            requestedHeight = deviceHeight;
+        }
+        if (deviceWidth == cardWidth && deviceHeight == cardHeight) {
+            sprites = new Sprites(atlas, width, height, cardWidth, cardHeight);
+            if (onReady != null) {
+                onReady.run();
+            }
+            return;
+        }
+        scaler.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (CardAtlas.this) {
+                    if (deviceWidth != requestedWidth || deviceHeight != requestedHeight) {
+                        return; // Resized again meanwhile.
+                    }
+                }
+                long start = System.nanoTime();
+                BufferedImage sheet = scaleSheet(deviceWidth, deviceHeight);
+                synchronized (CardAtlas.this) {
+                    if (deviceWidth != requestedWidth || deviceHeight != requestedHeight) {
+                        return;
+                    }
+                    sprites = new Sprites(sheet, width, height, deviceWidth, deviceHeight);
+                }
+                System.out.println("Card images scaled to " + deviceWidth + "x" + deviceHeight + " in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+                if (onReady != null) {
+                    onReady.run();
+                }
+            }
+        });
+    }
+
+    private BufferedImage scaleSheet(int width, int height) {
+        int rows = (BACK_INDEX + COLUMNS) / COLUMNS;
+        BufferedImage sheet = createCompatibleImage(COLUMNS * width, rows * height);
+        Graphics2D g2 = sheet.createGraphics();
+        for (int i = 0; i <= BACK_INDEX; i++) {
+            // Scaled one by one, so the edges do not blend with the next card of the atlas.
+            BufferedImage card = atlas.getSubimage(getSourceX(i), getSourceY(i), cardWidth, cardHeight);
+            g2.drawImage(ImageUtil.getScaledImage(card, width, height), getSourceX(i, width),
+                getSourceY(i, height), null);
+        }
+        g2.dispose();
+        return sheet;
+    }
+
+    /**
+     * Draws the face of a card.
+     *
+     * @param g
+     * @param id
+     *            card id
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     */
+    public void drawFace(Graphics g, int id, int x, int y, int width, int height) {
+        draw(g, id, x, y, width, height);
+    }
+
+    /**
+     * Draws the back of a card.
+     *
+     * @param g
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     */
+    public void drawBack(Graphics g, int x, int y, int width, int height) {
+        draw(g, BACK_INDEX, x, y, width, height);
+    }
+
+    private void draw(Graphics g, int index, int x, int y, int width, int height) {
+        Sprites s = sprites;
+        int sx = getSourceX(index, s.deviceWidth), sy = getSourceY(index, s.deviceHeight);
+        // A plain blit when prepared for this size, else scaled on the fly until the new sheet is ready.
+        g.drawImage(s.sheet, x, y, x + width, y + height, sx, sy, sx + s.deviceWidth, sy + s.deviceHeight, null);
+    }
+}
@@ -1,27 +1,12 @@
 package com.sri.jfreecell;
 
-import java.awt.AlphaComposite;
-import java.awt.BasicStroke;
 import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Graphics2D;
+import java.awt.Component;
 import java.awt.Rectangle;
-import java.awt.RenderingHints;
-import java.awt.geom.RoundRectangle2D;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.ListIterator;
-
-import org.pushingpixels.trident.Timeline;
-import org.pushingpixels.trident.Timeline.TimelineState;
-import org.pushingpixels.trident.callback.TimelineCallbackAdapter;
-import org.pushingpixels.trident.interpolator.KeyFrames;
-import org.pushingpixels.trident.interpolator.KeyTimes;
-import org.pushingpixels.trident.interpolator.KeyValues;
+import java.util.NoSuchElementException;
+import java.util.Random;
 
 /**
  * A pile of cards (can be used for a hand, deck, discard pile...) 
@@ -30,54 +15,107 @@ import org.pushingpixels.trident.interpolator.KeyValues;
  * @author Sateesh Gampala
  *
  */
-public class CardPile implements Iterable<Card>, Serializable {
+public class CardPile implements Iterable<Card>, Animated {
 
-    private static final long serialVersionUID = 3039382357994794527L;
     public static final int TABLEAU_INCR_Y = 18;
+    private static final Random RANDOM = new Random();
 
-    protected ArrayList<Card> cards = new ArrayList<Card>(); // All the cards.
+    protected byte[] cards = new byte[Card.NO_OF_CARDS]; // Ids of all the cards.
+    protected int size;
     protected Rectangle loc = null;
+    protected CardView[] views;
+    private GameModel board;
+    /** Vertical offset between stacked cards, scaled with the board. */
+    protected int offsetY = TABLEAU_INCR_Y;
+    private Component canvas;
 
-    private transient boolean highlight = false;
+    private boolean highlight = false;
     private Color backgroundColor;
     private float opacity = 0.7f;
-    private transient Timeline blinkTimeline;
 
-    public CardPile() {
-        initTimeLines();
+    @Override
+    public void animate(int property, float a, float b) {
+        if (property == OPACITY) {
+            setOpacity(a);
+        }
+    }
+
+    @Override
+    public void animationEnded(int property, boolean completed) {
+        if (property == OPACITY && completed) {
+            backgroundColor = Color.yellow;
+            highlight = false;
+            repaint();
+        }
+    }
+
+    /**
+     * Attaches the pile to its board and the card views of it.
+     * 
+     * @param board
+     *            told of every change of the outline, to publish it
+     * @param views
+     *            views indexed by card id
+     */
+    void setViews(GameModel board, CardView[] views) {
+	this.board = board;
+	this.views = views;
+    }
+
+    /**
+     * Sets the component the pile is painted on, to repaint its outline when it changes.
+     * 
+     * @param canvas
+     */
+    void setCanvas(Component canvas) {
+	this.canvas = canvas;
     }
 
-    private void initTimeLines() {
-        blinkTimeline = new Timeline(this);
-        blinkTimeline.setDuration(2000);
-        blinkTimeline.addCallback(new TimelineCallbackAdapter() {
-            @Override
-            public void onTimelineStateChanged(TimelineState oldState, TimelineState newState, float duration,
-                float timelinePos) {
-                if (newState == TimelineState.DONE) {
-                    backgroundColor = Color.yellow;
-                    highlight = false;
-                }
-            }
-        });
+    /**
+     * Sets the vertical offset between stacked cards, the pile moving its cards accordingly.
+     * 
+     * @param offsetY
+     */
+    void setOffsetY(int offsetY) {
+	this.offsetY = offsetY;
+	if (loc != null && views != null) {
+	    resetCardsPos();
+	}
+    }
+
+    private void repaint() {
+	if (canvas != null && loc != null) {
+	    // Room for the blink outline.
+	    canvas.repaint(loc.x - 2, loc.y - 2, loc.width + 5, loc.height + 5);
+	}
+	if (board != null) {
+	    board.viewChanged();
+	}
+    }
+
+    /**
+     * Gets the view of a card on the board of this pile.
+     * 
+     * @param card
+     * @return view, or null if the pile is not on a board
+     */
+    public CardView getView(Card card) {
+	return views != null ? views[card.getId()] : null;
     }
 
     public void pushIgnoreRules(Card newCard) {
-	cards.add(newCard);
-	if (loc != null)
-	    newCard.setPosition(loc.x, loc.y);
+	cards[size++] = (byte) newCard.getId();
+	if (loc != null && views != null)
+	    getView(newCard).setPosition(loc.x, loc.y);
     }
 
     public Card popIgnoreRules() {
-	int lastIndex = size() - 1;
-	Card crd = cards.get(lastIndex);
-	cards.remove(lastIndex);
-	return crd;
+	return Card.get(cards[--size]);
     }
 
     public boolean push(Card newCard) {
 	if (isAllowedtoAdd(newCard)) {
-	    cards.add(newCard);
+	    cards[size++] = (byte) newCard.getId();
 	    return true;
 	} else {
 	    return false;
@@ -100,7 +138,46 @@ public class CardPile implements Iterable<Card>, Serializable {
      * @return no of card in the Pile
      */
     public int size() {
-	return cards.size();
+	return size;
+    }
+
+    /**
+     * Gets the card at a position of the pile.
+     * 
+     * @param index
+     *            0 for the bottom card
+     * @return card
+     */
+    public Card get(int index) {
+	if (index < 0 || index >= size) {
+	    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+	}
+	return Card.get(cards[index]);
+    }
+
+    /**
+     * Copies the ids of the cards, bottom card first, for a {@link BoardSnapshot}.
+     * 
+     * @return card ids
+     */
+    byte[] toIds() {
+	return Arrays.copyOf(cards, size);
+    }
+
+    /**
+     * Gets the position of a card in the pile.
+     * 
+     * @param card
+     * @return index, or -1 if the card is not in the pile
+     */
+    public int indexOf(Card card) {
+	int id = card.getId();
+	for (int i = 0; i < size; i++) {
+	    if (cards[i] == id) {
+		return i;
+	    }
+	}
+	return -1;
     }
 
     /**
@@ -119,7 +196,12 @@ public class CardPile implements Iterable<Card>, Serializable {
      * Shuffles the cards
      */
     public void shuffle() {
-	Collections.shuffle(cards);
+	for (int i = size - 1; i > 0; i--) {
+	    int j = RANDOM.nextInt(i + 1);
+	    byte tmp = cards[i];
+	    cards[i] = cards[j];
+	    cards[j] = tmp;
+	}
     }
 
     /**
@@ -128,7 +210,7 @@ public class CardPile implements Iterable<Card>, Serializable {
      * @return card
      */
     public Card peekTop() {
-	return cards.get(cards.size() - 1);
+	return get(size - 1);
     }
 
     /*
@@ -136,23 +218,29 @@ public class CardPile implements Iterable<Card>, Serializable {
      * @see java.lang.Iterable#iterator()
      */
     public Iterator<Card> iterator() {
-	return cards.iterator();
-    }
-
-    /**
-     * Returns reverse Iterator.
-     * 
-     * @return
-     */
-    public ListIterator<Card> reverseIterator() {
-	return cards.listIterator(cards.size());
+	return new Iterator<Card>() {
+	    private int next = 0;
+
+	    @Override
+	    public boolean hasNext() {
+		return next < size;
+	    }
+
+	    @Override
+	    public Card next() {
+		if (next >= size) {
+		    throw new NoSuchElementException();
+		}
+		return Card.get(cards[next++]);
+	    }
+	};
     }
 
     /**
      * Clear all card from the pile.
      */
     public void clear() {
-	cards.clear();
+	size = 0;
     }
 
     /**
@@ -165,17 +253,15 @@ public class CardPile implements Iterable<Card>, Serializable {
     }
 
     public void setPosition(Rectangle loc) {
+	repaint();
 	this.loc = loc;
-	int i = 0;
-	for (Card card : cards) {
-	    card.setPosition(loc.x, loc.y + (TABLEAU_INCR_Y * i++));
-	}
+	repaint();
+	resetCardsPos();
     }
 
     public void resetCardsPos() {
-	int i = 0;
-	for (Card card : cards) {
-	    card.setPosition(this.loc.x, this.loc.y + (TABLEAU_INCR_Y * i++));
+	for (int i = 0; i < size; i++) {
+	    views[cards[i]].setPosition(this.loc.x, this.loc.y + (offsetY * i));
 	}
     }
 
@@ -193,54 +279,27 @@ public class CardPile implements Iterable<Card>, Serializable {
     }
 
     public void setPosition(Card card, int newX, int newY) {
-	for (int i = cards.indexOf(card); i >= 0 && i < cards.size(); i++) {
-	    cards.get(i).setPosition(newX, newY);
-	    newY += TABLEAU_INCR_Y;
+	for (int i = indexOf(card); i >= 0 && i < size; i++) {
+	    views[cards[i]].setPosition(newX, newY);
+	    newY += offsetY;
 	}
     }
 
-    public void drawDragged(Graphics g, Card card) {
-	for (int i = cards.indexOf(card); i >= 0 && i < cards.size(); i++) {
-	    cards.get(i).draw(g);
-	}
-    }
-
-    public ArrayList<Card> getCardListFrom(Card card) {
-	ArrayList<Card> cardsList = new ArrayList<Card>();
-	for (int i = cards.indexOf(card); i >= 0 && i < cards.size(); i++) {
-	    cardsList.add(cards.get(i));
-	}
-	return cardsList;
-    }
-
-    public void draw(Graphics g) {
-	Graphics2D g2 = (Graphics2D) g.create();
-	if (highlight) {
-	    g2.setStroke(new BasicStroke(3));
-	    g2.setColor(this.backgroundColor);
-	    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-	    g2.setComposite(AlphaComposite.SrcOver.derive(opacity));
-	}
-	RoundRectangle2D roundedRectangle = new RoundRectangle2D.Float(loc.x, loc.y, loc.width, loc.height, 10, 10);
-	g2.draw(roundedRectangle);
-	g2.dispose();
-    }
 
     public void blink(int delay) {
 	highlight = true;
 	backgroundColor = Color.red;
-	KeyValues<Float> xValues = KeyValues.create(1f, 0.75f, 0.5f, 0.75f, 1f, 0.75f, 0.5f, 0.75f, 1f);
-	KeyTimes alphaTimes = new KeyTimes(0f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f, 0.7f, 0.8f, 1f);
-	try {
-	    blinkTimeline.setInitialDelay(delay);
-	} catch (Exception ex) {
-	}
-	blinkTimeline.addPropertyToInterpolate("opacity", new KeyFrames<Float>(xValues, alphaTimes));
-	this.blinkTimeline.replay();
+	repaint();
+	AnimationClock.getInstance().animate(this, OPACITY, delay, AnimationClock.BLINK_MILLIS, 0f,
+		AnimationClock.BLINK_TIMES, AnimationClock.BLINK_OPACITIES, null);
     }
 
     public void stopBlink() {
-	blinkTimeline.end();
+	AnimationClock.getInstance().finish(this, OPACITY);
+    }
+
+    public boolean isHighlighted() {
+	return highlight;
     }
 
     public Color getBackgroundColor() {
@@ -249,6 +308,7 @@ public class CardPile implements Iterable<Card>, Serializable {
 
     public void setBackgroundColor(Color backgroundColor) {
 	this.backgroundColor = backgroundColor;
+	repaint();
     }
 
     public float getOpacity() {
@@ -257,10 +317,8 @@ public class CardPile implements Iterable<Card>, Serializable {
 
     public void setOpacity(float opacity) {
 	this.opacity = opacity;
-    }
-    
-    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
-        ois.defaultReadObject();
-        initTimeLines();
+	if (highlight) {
+	    repaint();
+	}
     }
 }
@@ -12,8 +12,6 @@ import java.awt.Rectangle;
  */
 public class CardPileFoundation extends CardPile {
 
-    private static final long serialVersionUID = -5609208267476759214L;
-
     @Override
     public boolean isAllowedtoAdd(Card card) {
 	// Accept Ace card if pile is empty.
@@ -39,15 +37,13 @@ public class CardPileFoundation extends CardPile {
     @Override
     public void setPosition(Rectangle loc) {
         this.loc = loc;
-        for (Card card : cards) {
-            card.setPosition(loc.x, loc.y);
-        }
+        resetCardsPos();
     }
 
     @Override
     public void resetCardsPos() {
-        for (Card card : cards) {
-            card.setPosition(this.loc.x, this.loc.y);
+        for (int i = 0; i < size; i++) {
+            views[cards[i]].setPosition(this.loc.x, this.loc.y);
         }
     }
 }
@@ -8,8 +8,6 @@ package com.sri.jfreecell;
  */
 public class CardPileFreeCell extends CardPile {
 
-    private static final long serialVersionUID = -6462488239384705042L;
-
     @Override
     public boolean isAllowedtoAdd(Card card) {
 	// Accept only if the current pile is empty.
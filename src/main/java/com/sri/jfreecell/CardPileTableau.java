@@ -1,6 +1,5 @@
 package com.sri.jfreecell;
 
-import java.util.ArrayList;
 
 /**
  * Card pile with the initial cards. Only need to specify rules for adding cards. Default rules apply to remove them.
@@ -10,14 +9,15 @@ import java.util.ArrayList;
  */
 public class CardPileTableau extends CardPile {
 
-    private static final long serialVersionUID = -3457695861280593662L;
-    private ArrayList<Card> cascadedCards = new ArrayList<Card>();
+    /** Index of the bottom card of the movable run ending at the top card. */
+    private int cascadeStart = 0;
 
     @Override
     public void pushIgnoreRules(Card newCard) {
 	super.pushIgnoreRules(newCard);
-	if (loc != null) {
-	    newCard.setPosition(loc.x, loc.y + (TABLEAU_INCR_Y * (cards.size() - 1)));
+	addToCascade(newCard);
+	if (loc != null && views != null) {
+	    getView(newCard).setPosition(loc.x, loc.y + (offsetY * (size - 1)));
 	}
     }
 
@@ -25,8 +25,8 @@ public class CardPileTableau extends CardPile {
     public boolean push(Card newCard) {
 	if (super.push(newCard)) {
 	    addToCascade(newCard);
-	    if (loc != null) {
-		newCard.setPosition(loc.x, loc.y + (TABLEAU_INCR_Y * (cards.size() - 1)));
+	    if (loc != null && views != null) {
+		getView(newCard).setPosition(loc.x, loc.y + (offsetY * (size - 1)));
 	    }
 	    return true;
 	}
@@ -34,12 +34,18 @@ public class CardPileTableau extends CardPile {
     }
 
     @Override
-    public Card pop() {
-	Card crd = super.pop();
-	deleteFromCascade(crd);
+    public Card popIgnoreRules() {
+	Card crd = super.popIgnoreRules();
+	deleteFromCascade();
 	return crd;
     }
 
+    @Override
+    public void clear() {
+	super.clear();
+	cascadeStart = 0;
+    }
+
     @Override
     public boolean isAllowedtoAdd(Card card) {
 	return (this.size() == 0 || validStack(this.peekTop(), card));
@@ -47,7 +53,8 @@ public class CardPileTableau extends CardPile {
 
     @Override
     public boolean isMovable(Card tcard) {
-	return cascadedCards.contains(tcard);
+	int idx = indexOf(tcard);
+	return idx >= 0 && idx >= cascadeStart;
     }
 
     /**
@@ -62,42 +69,33 @@ public class CardPileTableau extends CardPile {
 		&& topCard.getSuit().getColor() != btmCard.getSuit().getColor();
     }
 
-    public ArrayList<Card> getCascades(int maxCards) {
-	int size = cascadedCards.size();
-	int stIdx = (size > maxCards ? size - maxCards : 0);
-	return new ArrayList<Card>(cascadedCards.subList(stIdx, size));
+    /**
+     * Gets no of cards in the movable run ending at the top card.
+     * 
+     * @return length of the run
+     */
+    public int getCascadeSize() {
+	return size - cascadeStart;
     }
 
-    public void addToCascade(Card card) {
-	synchronized (cascadedCards) {
-	    cascadedCards.add(card);
+    private void addToCascade(Card card) {
+	if (size == 1) {
+	    cascadeStart = 0;
+	} else if (!validStack(Card.get(cards[size - 2]), card)) {
+	    cascadeStart = size - 1;
 	}
     }
 
-    public void deleteFromCascade(Card card) {
-	synchronized (cascadedCards) {
-	    int idx = cascadedCards.indexOf(card);
-	    if (idx != -1) {
-		cascadedCards.subList(idx, cascadedCards.size()).clear();
-		if (cascadedCards.size() == 0 && size() > 0) {
-		    updateCascades();
-		}
-	    }
+    private void deleteFromCascade() {
+	if (cascadeStart >= size) {
+	    updateCascades();
 	}
     }
 
     public void updateCascades() {
-	synchronized (cascadedCards) {
-	    for (int i = 0; i < cards.size() - 1; i++) {
-		if (validStack(cards.get(i), cards.get(i + 1))) {
-		    cascadedCards.add(cards.get(i));
-		} else {
-		    cascadedCards.clear();
-		}
-	    }
-	    if (size() > 0) {
-		cascadedCards.add(peekTop());
-	    }
+	cascadeStart = size > 0 ? size - 1 : 0;
+	while (cascadeStart > 0 && validStack(Card.get(cards[cascadeStart - 1]), Card.get(cards[cascadeStart]))) {
+	    cascadeStart--;
 	}
     }
 }
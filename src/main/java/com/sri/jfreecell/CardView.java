@@ -0,0 +1,278 @@
+package com.sri.jfreecell;
+
+import static com.sri.jfreecell.Card.CARD_HEIGHT;
+import static com.sri.jfreecell.Card.CARD_WIDTH;
+
+import java.awt.Color;
+import java.awt.Component;
+
+/**
+ * Position, highlight and animation state of a card on a board. A board creates one view per card and reuses them for
+ * every game; its moves and blinks are run by the {@link AnimationClock}.<br>
+ * Every change of what the card looks like asks its board to repaint the area of the card, before and after the
+ * change, so only that area is painted again, and tells the model, which publishes it in the next
+ * {@link BoardSnapshot}; the card is drawn from there.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public class CardView implements Animated {
+
+    /** Room around the card image taken by the highlight outline. */
+    private static final int MARGIN = 2;
+    private static final long MOVE_MILLIS = 250;
+    private static final long BOUNCE_MILLIS = 3000;
+    private static final float[] BOUNCE_TIMES = { 0.0f, 0.25f, 0.5f, 0.75f, 1.0f };
+
+    private final Card card;
+    private GameModel board;
+    private Component canvas;
+    private int x;
+    private int y;
+    private int width = CARD_WIDTH;
+    private int height = CARD_HEIGHT;
+    private boolean faceUp = true;
+    private boolean highlight = false;
+    private Color backgroundColor = Color.yellow;
+    private float opacity = 0.7f;
+    private boolean moving;
+    private boolean blinking;
+
+    public CardView(Card card) {
+        this.card = card;
+    }
+
+    /**
+     * Creates the views of all cards of a board, indexed by card id.
+     *
+     * @param board
+     *            told of every change of the views, to publish them
+     * @return views
+     */
+    static CardView[] createViews(GameModel board) {
+        CardView[] views = new CardView[Card.NO_OF_CARDS];
+        for (int i = 0; i < views.length; i++) {
+            views[i] = new CardView(Card.get(i));
+            views[i].board = board;
+        }
+        return views;
+    }
+
+    /**
+     * Sets the component the card is painted on, to repaint it when it changes.
+     * 
+     * @param canvas
+     */
+    void setCanvas(Component canvas) {
+        this.canvas = canvas;
+    }
+
+    /**
+     * Asks the board to repaint the current area of the card.
+     */
+    private void repaint() {
+        if (canvas != null) {
+            canvas.repaint(x - MARGIN, y - MARGIN, width + 2 * MARGIN, height + 2 * MARGIN);
+        }
+        changed();
+    }
+
+    /**
+     * Tells the board the card changed, for the next snapshot.
+     */
+    private void changed() {
+        if (board != null) {
+            board.viewChanged();
+        }
+    }
+
+    /**
+     * Brings the view back to its initial state for a new game.
+     */
+    public void reset() {
+        AnimationClock.getInstance().cancel(this, POSITION);
+        AnimationClock.getInstance().cancel(this, OPACITY);
+        faceUp = true;
+        highlight = false;
+        backgroundColor = Color.yellow;
+        opacity = 0.7f;
+        repaint();
+    }
+
+    @Override
+    public void animate(int property, float a, float b) {
+        if (property == POSITION) {
+            setPosition((int) a, (int) b);
+        } else if (property == OPACITY) {
+            setOpacity(a);
+        }
+    }
+
+    @Override
+    public void animationEnded(int property, boolean completed) {
+        if (property == POSITION) {
+            moving = false;
+            changed();
+        } else if (property == OPACITY) {
+            blinking = false;
+            if (completed) {
+                backgroundColor = Color.yellow;
+                highlight = false;
+                repaint();
+            }
+            changed();
+        }
+    }
+
+    /**
+     * set x & y position of the card.
+     *
+     * @param x
+     * @param y
+     */
+    public void setPosition(int x, int y) {
+        if (x == this.x && y == this.y) {
+            return;
+        }
+        repaint();
+        this.x = x;
+        this.y = y;
+        repaint();
+    }
+
+    /**
+     * Sets the size the card is drawn at, which follows the size of the board.
+     *
+     * @param width
+     * @param height
+     */
+    public void setSize(int width, int height) {
+        if (width == this.width && height == this.height) {
+            return;
+        }
+        repaint();
+        this.width = width;
+        this.height = height;
+        repaint();
+    }
+
+    /**
+     * To bounce the card after game completion.
+     *
+     * @param x
+     * @param y
+     * @param delay
+     */
+    public void bounce(int x, int y, int delay) {
+        float[] xValues = { this.x, x + (this.x - x) / 4, x, x - (this.x - x) / 4, -width };
+        float[] yValues = { this.y, this.y + (y - this.y) / 4, y, this.y + (y - this.y) / 4, 0 };
+        AnimationClock.getInstance().animate(this, POSITION, delay, BOUNCE_MILLIS, 0.8f, BOUNCE_TIMES, xValues,
+            yValues);
+        moving = true;
+        changed();
+    }
+
+    public void moveTo(int x, int y) {
+        AnimationClock.getInstance().animate(this, POSITION, MOVE_MILLIS, this.x, this.y, x, y);
+        moving = true;
+        changed();
+    }
+
+    public void moveFrom(int x, int y) {
+        AnimationClock.getInstance().animate(this, POSITION, MOVE_MILLIS, x, y, this.x, this.y);
+        moving = true;
+        changed();
+    }
+
+    public void blink(int delay) {
+        highlight = true;
+        backgroundColor = Color.red;
+        repaint();
+        AnimationClock.getInstance().animate(this, OPACITY, delay, AnimationClock.BLINK_MILLIS, 0f,
+            AnimationClock.BLINK_TIMES, AnimationClock.BLINK_OPACITIES, null);
+        blinking = true;
+        changed();
+    }
+
+    public void stopBlink() {
+        AnimationClock.getInstance().finish(this, OPACITY);
+    }
+
+    public Card getCard() {
+        return card;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+
+    public boolean isFaceUp() {
+        return faceUp;
+    }
+
+    /**
+     * Tells whether the card is changing: animated or highlighted.
+     * 
+     * @return true if the card can not be drawn from a cached image
+     */
+    public boolean isLive() {
+        return highlight || moving || blinking;
+    }
+
+    public void turnFaceUp() {
+        this.faceUp = true;
+        repaint();
+    }
+
+    public void turnFaceDown() {
+        this.faceUp = false;
+        repaint();
+    }
+
+    public boolean isHighlighted() {
+        return highlight;
+    }
+
+    public void highlight(boolean highlight) {
+        boolean changed = this.highlight != highlight || (highlight && opacity != 0.7f);
+        this.highlight = highlight;
+        opacity = 0.7f;
+        if (changed) {
+            repaint();
+        }
+    }
+
+
+    public Color getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    public float getOpacity() {
+        return opacity;
+    }
+
+    public void setOpacity(float opacity) {
+        this.opacity = opacity;
+        if (highlight) {
+            repaint();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return card + " at " + x + "," + y;
+    }
+}
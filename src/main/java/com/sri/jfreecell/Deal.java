@@ -1,89 +1,117 @@
 package com.sri.jfreecell;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Scanner;
-import java.util.StringTokenizer;
+import com.sri.jfreecell.engine.BoardState;
 
 /**
- * Initialize deal to one of the pre-determined 32,000 deals in MS FreeCell.
- * 
+ * Initialize deal to one of the pre-determined deals in MS FreeCell.<br>
+ * Deals are computed with the Microsoft C runtime LCG, so no deal list has to be bundled or scanned. Numbers 1 to
+ * 32000 are the original deals, numbers up to 2^31 - 1 are the extended MS deals and numbers up to 2^33 - 1 follow the
+ * FreeCell Pro "8 billion deals" scheme.
+ *
  * @author Sateesh Gampala
  */
 public class Deal {
 
-    private static final ClassLoader CLSLDR = Deal.class.getClassLoader();
+    /** Highest deal number of the original MS FreeCell. */
+    public static final long MS_DEALS = 32000L;
+    /** Highest deal number of the 31-bit seed space. */
+    public static final long MAX_MS_DEAL = 0x7FFFFFFFL;
+    /** Highest deal number of the FreeCell Pro "8 billion deals" seed space. */
+    public static final long MAX_DEAL = 0x1FFFFFFFFL;
+
     private static final String ranks = ".A23456789TJQK";
     private static final String suits = "CDHS";
-    private static InputStream stream;
 
-    private static CardPile initialize(int[] deals) {
-        // Gives cards AC - KC, AD - KD, AH - KH, AS - KS
-        short[] cards = new short[52];
-        for (short i = 0; i < 52; i++) {
-            cards[i] = (short) (1 + i);
-        }
-
-        // now process the deal number
-        short[][] dealt = new short[9][9];
-        for (short i = 0; i < 9; i++) {
-            for (short j = 0; j < 9; j++) {
-                dealt[i][j] = 0;
-            }
+    /**
+     * Resolves a shuffle sequence into the dealt cards.
+     *
+     * @param deals
+     *            shuffle sequence, see {@link #shuffle(long)}
+     * @return card codes (rank * 4 + suit, suits in CDHS order) in dealing order
+     */
+    static byte[] cards(int[] deals) {
+        // Gives cards AC AD AH AS, 2C ... KS
+        byte[] cards = new byte[52];
+        for (byte i = 0; i < 52; i++) {
+            cards[i] = i;
         }
 
+        byte[] dealt = new byte[deals.length];
         int wLeft = 52;
         for (int i = 0; i < deals.length; i++) {
             int j = deals[i];
-            dealt[(i % 8) + 1][i / 8] = cards[j];
+            dealt[i] = cards[j];
             cards[j] = cards[--wLeft];
         }
+        return dealt;
+    }
 
+    /**
+     * Builds the initial board from dealt card codes.
+     *
+     * @param codes
+     *            card codes in dealing order, see {@link #cards(int[])}
+     * @return pile of cards in dealing order
+     */
+    static CardPile initialize(byte[] codes) {
         CardPile cardList = new CardPile();
-        for (int r = 0; r <= 6; r++) {
-            for (int c = 1; c <= 8; c++) {
-                int card = dealt[c][r];
-                if (card <= 52 && card > 0) {
-                    cardList.push(cardInfo(card));
-                }
-            }
+        for (byte code : codes) {
+            cardList.push(cardInfo(code + 1));
         }
-
         return cardList;
     }
 
-    public static final CardPile initialize(int dealNumber) throws IOException {
-        stream = CLSLDR.getResourceAsStream("32000.txt");
-        Scanner sc = new Scanner(stream);
-        try {
-            for (int i = 0; i <= 32000; i++) {
-                String line = sc.nextLine();
-                if (i < dealNumber) {
-                    continue;
-                }
+    public static final CardPile initialize(long dealNumber) {
+        return initialize(cards(shuffle(dealNumber)));
+    }
 
-                StringTokenizer st = new StringTokenizer(line, "., ");
-                // get task no.
-                int val = Integer.valueOf(st.nextToken()); // bypass number
-                assert (val == i);
+    /**
+     * Builds the initial position of a deal for the engine, without creating any card objects.
+     *
+     * @param codes
+     *            card codes in dealing order, see {@link #cards(int[])}
+     * @return position
+     */
+    public static BoardState toBoardState(byte[] codes) {
+        int[] ids = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            ids[i] = (codes[i] & 3) * 13 + (codes[i] >> 2);
+        }
+        return BoardState.deal(ids);
+    }
 
-                // construct deal "shuffle" sequence
-                int[] deals = new int[52];
-                int idx = 0;
-                while (st.hasMoreTokens()) {
-                    deals[idx++] = Integer.valueOf(st.nextToken());
-                }
+    public static BoardState toBoardState(long dealNumber) {
+        return toBoardState(cards(shuffle(dealNumber)));
+    }
 
-                // prepare the initial board.
-                return initialize(deals);
+    /**
+     * Computes the "shuffle" sequence of a deal: for each of the 52 dealt cards, the index of the card picked from
+     * the remaining ones.
+     *
+     * @param dealNumber
+     *            deal number, from 1 to {@link #MAX_DEAL}
+     * @return shuffle sequence
+     */
+    public static int[] shuffle(long dealNumber) {
+        if (dealNumber < 1 || dealNumber > MAX_DEAL) {
+            throw new IllegalArgumentException("Deal number out of range: " + dealNumber);
+        }
+        long seed = dealNumber < 0x100000000L ? dealNumber : dealNumber - 0x100000000L;
+        int[] deals = new int[52];
+        for (int i = 0, left = 52; i < deals.length; i++, left--) {
+            seed = seed * 214013L + 2531011L;
+            int rand;
+            if (dealNumber < 0x100000000L) {
+                rand = (int) ((seed >> 16) & 0x7FFF);
+                if (dealNumber > MAX_MS_DEAL) {
+                    rand |= 0x8000;
+                }
+            } else {
+                rand = (int) ((seed >> 16) & 0xFFFF) + 1;
             }
-
-            // not found!
-            return null;
-        } finally {
-            sc.close();
-            stream.close();
+            deals[i] = rand % left;
         }
+        return deals;
     }
 
     private static Card cardInfo(int card) {
@@ -93,18 +121,11 @@ public class Deal {
         try {
             Face f = Face.fromCode(ranks.charAt(rs));
             Suit s = Suit.fromCode(suits.charAt(ss));
-            Card c = new Card(f, s);
-            c.turnFaceUp();
-            return c;
+            return Card.of(f, s);
         } catch (Exception e) {
             System.out.println("BAD");
             e.printStackTrace();
         }
         return null;
     }
-    
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-    }
 }
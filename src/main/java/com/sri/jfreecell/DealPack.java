@@ -0,0 +1,293 @@
+package com.sri.jfreecell;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import com.sri.jfreecell.engine.BoardState;
+import com.sri.jfreecell.util.FileUtil;
+
+/**
+ * A memory-mapped set of deals.<br>
+ * Layout: a 16 byte header (magic "FCPK", version, record size, deal count, reserved) followed by one fixed-width
+ * record of 52 card codes per deal, in dealing order. Deals in a pack are numbered from 1, so any deal is read straight
+ * from its offset without parsing. Every record is checked once, when the pack is opened, to hold each card exactly
+ * once.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public class DealPack implements Closeable {
+
+    public static final String EXTENSION = ".fcpk";
+    public static final String PACK_DIR = "packs";
+
+    private static final int MAGIC = 0x4643504B; // FCPK
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 52;
+    /** Most deals a pack can hold, as it is mapped at once. */
+    private static final int MAX_DEALS = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private final int size;
+
+    private DealPack(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel();
+        try {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Not a deal pack: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION || buffer.getShort(6) != RECORD_SIZE) {
+                throw new IOException("Unsupported deal pack: " + file);
+            }
+            size = buffer.getInt(8);
+            if (size < 0 || HEADER_SIZE + (long) size * RECORD_SIZE > length) {
+                throw new IOException("Truncated deal pack: " + file);
+            }
+            for (int deal = 1; deal <= size; deal++) {
+                if (!isValid(deal)) {
+                    throw new IOException("Corrupted deal " + deal + " in deal pack: " + file);
+                }
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Tells whether the record of a deal holds the 52 card codes, each once.
+     *
+     * @param dealNumber
+     * @return true if the deal can be played
+     */
+    private boolean isValid(int dealNumber) {
+        int offset = HEADER_SIZE + (dealNumber - 1) * RECORD_SIZE;
+        long seen = 0;
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            int code = buffer.get(offset + i);
+            if (code < 0 || code >= RECORD_SIZE || (seen & 1L << code) != 0) {
+                return false;
+            }
+            seen |= 1L << code;
+        }
+        return true;
+    }
+
+    /**
+     * Opens and maps a deal pack.
+     *
+     * @param file
+     * @return pack
+     * @throws IOException
+     *             if the file is missing, is not a deal pack or holds a deal that is not a full deck
+     */
+    public static DealPack open(File file) throws IOException {
+        return new DealPack(file);
+    }
+
+    /**
+     * Lists the packs installed in the application directory.
+     *
+     * @return pack files, sorted by name
+     */
+    public static List<File> listPacks() {
+        List<File> packs = new ArrayList<File>();
+        File[] files = getPackDirectory().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isFile() && f.getName().endsWith(EXTENSION)) {
+                    packs.add(f);
+                }
+            }
+        }
+        Collections.sort(packs);
+        return packs;
+    }
+
+    public static File getPackDirectory() {
+        return new File(FileUtil.getAppDirectory(), PACK_DIR);
+    }
+
+    /**
+     * Gets no of deals in the pack.
+     *
+     * @return no of deals
+     */
+    public int size() {
+        return size;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getName() {
+        String name = file.getName();
+        return name.endsWith(EXTENSION) ? name.substring(0, name.length() - EXTENSION.length()) : name;
+    }
+
+    /**
+     * Copies the card codes of a deal.
+     *
+     * @param dealNumber
+     *            from 1 to {@link #size()}
+     * @param codes
+     *            destination of the 52 card codes
+     */
+    public void read(long dealNumber, byte[] codes) {
+        if (dealNumber < 1 || dealNumber > size) {
+            throw new IllegalArgumentException("Deal number out of range: " + dealNumber);
+        }
+        int offset = HEADER_SIZE + (int) (dealNumber - 1) * RECORD_SIZE;
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            codes[i] = buffer.get(offset + i);
+        }
+    }
+
+    /**
+     * Builds the initial board of a deal.
+     *
+     * @param dealNumber
+     *            from 1 to {@link #size()}
+     * @return pile of cards in dealing order
+     */
+    public CardPile initialize(long dealNumber) {
+        byte[] codes = new byte[RECORD_SIZE];
+        read(dealNumber, codes);
+        return Deal.initialize(codes);
+    }
+
+    /**
+     * Builds the initial position of a deal for the engine.
+     *
+     * @param dealNumber
+     *            from 1 to {@link #size()}
+     * @return position
+     */
+    public BoardState toBoardState(long dealNumber) {
+        byte[] codes = new byte[RECORD_SIZE];
+        read(dealNumber, codes);
+        return Deal.toBoardState(codes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    /**
+     * Packs a deal list in the "N: a, b, c..." text layout, where each line holds the 52 shuffle indexes of deal N.
+     * Each deal is written at its own number, so lines can come in any order. Lines without a full shuffle sequence
+     * are skipped, as is deal 0, since packs are numbered from 1; a number found twice, or missing below the highest
+     * one, fails the conversion.
+     *
+     * @param text
+     *            source text file
+     * @param pack
+     *            destination pack file
+     * @return no of deals written
+     * @throws IOException
+     */
+    public static int convert(File text, File pack) throws IOException {
+        BitSet written = new BitSet();
+        int count = 0;
+        try (BufferedReader in = new BufferedReader(new FileReader(text));
+            RandomAccessFile out = new RandomAccessFile(pack, "rw")) {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            int[] deals = new int[RECORD_SIZE];
+            String line;
+            while ((line = in.readLine()) != null) {
+                StringTokenizer st = new StringTokenizer(line, ":., \t");
+                if (!st.hasMoreTokens()) {
+                    continue;
+                }
+                long number = Long.parseLong(st.nextToken());
+                int idx = 0;
+                while (st.hasMoreTokens() && idx < RECORD_SIZE) {
+                    int j = Integer.parseInt(st.nextToken());
+                    if (j < 0 || j >= RECORD_SIZE - idx) {
+                        throw new IOException("Invalid shuffle index " + j + " in line: " + line);
+                    }
+                    deals[idx++] = j;
+                }
+                if (idx < RECORD_SIZE) {
+                    continue;
+                }
+                if (number == 0) {
+                    System.err.println("Deal 0 skipped, packs are numbered from 1");
+                    continue;
+                }
+                if (number < 0 || number > MAX_DEALS) {
+                    throw new IOException("Invalid deal number " + number + " in line: " + line);
+                }
+                if (written.get((int) number)) {
+                    throw new IOException("Deal " + number + " found twice");
+                }
+                written.set((int) number);
+                ByteBuffer record = ByteBuffer.wrap(Deal.cards(deals));
+                long offset = HEADER_SIZE + (number - 1) * RECORD_SIZE;
+                while (record.hasRemaining()) {
+                    offset += channel.write(record, offset);
+                }
+            }
+            count = Math.max(0, written.length() - 1);
+            int missing = written.nextClearBit(1);
+            if (missing <= count) {
+                throw new IOException("Deal " + missing + " missing, deals go up to " + count);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putInt(count).putInt(0);
+            header.flip();
+            channel.write(header, 0);
+        }
+        return count;
+    }
+
+    /**
+     * Command line converter: {@code DealPack <deals.txt> [pack.fcpk]}. Without a destination the pack is installed
+     * in the application pack directory.
+     *
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: DealPack <deals.txt> [pack" + EXTENSION + "]");
+            System.exit(1);
+        }
+        File text = new File(args[0]);
+        File pack;
+        if (args.length > 1) {
+            pack = new File(args[1]);
+        } else {
+            File dir = getPackDirectory();
+            dir.mkdirs();
+            String name = text.getName();
+            int dot = name.lastIndexOf('.');
+            pack = new File(dir, (dot > 0 ? name.substring(0, dot) : name) + EXTENSION);
+        }
+        int count = convert(text, pack);
+        System.out.println(count + " deals packed to " + pack);
+    }
+}
@@ -8,17 +8,13 @@ package com.sri.jfreecell;
  */
 public class Deck extends CardPile {
 
-    private static final long serialVersionUID = -6039578474112103082L;
-    
     /**
      * Creates a new instance of Deck
      */
     public Deck() {
         for (Suit s : Suit.values()) {
             for (Face f : Face.values()) {
-                Card c = new Card(f, s);
-                c.turnFaceUp();
-                this.push(c);
+                this.push(Card.of(f, s));
             }
         }
         shuffle();
@@ -0,0 +1,105 @@
+package com.sri.jfreecell;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Debug probe of the cost of painting the board, enabled at startup with {@value #OPTION}.<br>
+ * For every frame it takes, from the {@link ThreadMXBean} of the painting thread, the bytes allocated and the CPU time
+ * spent, with the elapsed time, and logs averages and maxima every few seconds. Painting a board at rest or with a
+ * moving card allocates nothing, so any bytes per frame there show a regression.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+final class FrameProbe {
+
+    static final String OPTION = "--frame-probe";
+
+    private static final long LOG_NANOS = 5000000000L;
+
+    /** Bean with allocation counters, or null if the JVM has none. */
+    private final com.sun.management.ThreadMXBean allocations;
+    private final ThreadMXBean threads;
+
+    private long startBytes;
+    private long startCpu;
+    private long startNanos;
+
+    // Totals of the current log period.
+    private long logStart;
+    private int frames;
+    private long bytesSum;
+    private long bytesMax;
+    private long cpuSum;
+    private long nanosSum;
+    private long nanosMax;
+
+    FrameProbe() {
+        threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            allocations = (com.sun.management.ThreadMXBean) threads;
+            allocations.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            allocations = null;
+            System.err.println("Frame probe: allocated bytes not supported by this JVM");
+        }
+        if (threads.isCurrentThreadCpuTimeSupported()) {
+            threads.setThreadCpuTimeEnabled(true);
+        }
+        logStart = System.nanoTime();
+    }
+
+    /**
+     * Starts measuring a frame, on the painting thread.
+     */
+    void begin() {
+        startBytes = allocatedBytes();
+        startCpu = cpuTime();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Ends the frame started by {@link #begin()}, on the same thread, and logs the period when it is over.
+     */
+    void end() {
+        long end = System.nanoTime();
+        long nanos = end - startNanos;
+        long cpu = cpuTime() - startCpu;
+        long bytes = allocatedBytes() - startBytes;
+
+        frames++;
+        bytesSum += bytes;
+        bytesMax = Math.max(bytesMax, bytes);
+        cpuSum += cpu;
+        nanosSum += nanos;
+        nanosMax = Math.max(nanosMax, nanos);
+        if (end - logStart >= LOG_NANOS) {
+            log();
+            logStart = end;
+        }
+    }
+
+    private long allocatedBytes() {
+        return allocations != null ? allocations.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    private long cpuTime() {
+        return threads.isThreadCpuTimeEnabled() ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    private void log() {
+        if (frames > 0) {
+            System.out.printf("Frame probe: %d frames, allocated avg %d B max %d B, time avg %d ns max %d ns,"
+                + " cpu avg %d ns%n", frames, bytesSum / frames, bytesMax, nanosSum / frames, nanosMax,
+                cpuSum / frames);
+        }
+        frames = 0;
+        bytesSum = 0;
+        bytesMax = 0;
+        cpuSum = 0;
+        nanosSum = 0;
+        nanosMax = 0;
+    }
+}
@@ -7,43 +7,68 @@ import static com.sri.jfreecell.event.GameEvents.NEW;
 import static com.sri.jfreecell.event.GameEvents.NOMOVESLEFT;
 
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.Serializable;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.ListIterator;
 import java.util.concurrent.ThreadLocalRandom;
 
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import com.sri.jfreecell.engine.BoardState;
+import com.sri.jfreecell.engine.MoveHistory;
+import com.sri.jfreecell.engine.MoveJournal;
+import com.sri.jfreecell.engine.MoveGenerator;
+import com.sri.jfreecell.engine.Moves;
+import com.sri.jfreecell.engine.PositionHash;
+import com.sri.jfreecell.engine.SavedGame;
 import com.sri.jfreecell.event.GameEvent;
 import com.sri.jfreecell.event.GameEvents;
 import com.sri.jfreecell.event.GameListener;
+import com.sri.jfreecell.solver.HintService;
 
 /**
- * Model for the Game.
+ * Model for the Game.<br>
+ * The model has a single writer, the event dispatch thread: mouse handlers, menus, and the animation clock with the
+ * steps of the win sequence all change it there, and it is only built on another thread before being shown. Painting,
+ * which the active renderer does on its own thread, reads the {@link BoardSnapshot} published after each batch of
+ * changes instead of the piles and views.
  * 
  * @author Sateesh Gampala
  *
  */
-public class GameModel implements Iterable<CardPile>, Serializable {
+public class GameModel implements Iterable<CardPile> {
 
-    private static final long serialVersionUID = -6674914038491480772L;
+    /** Time spent on a position before it is analysed for the next hint. */
+    private static final int HINT_IDLE_MILLIS = 3000;
 
     private CardPile[] freeCells;
     private CardPile[] tableau;
     private CardPile[] tableauBkp;
     private CardPile[] foundation;
+    /** Index in {@link #foundation} of the pile each suit was played on, or -1, kept through undo and seek. */
+    private final int[] suitPiles = new int[Moves.NO_OF_FOUNDATIONS];
 
     private ArrayList<CardPile> allPiles;
-    private transient ArrayList<GameListener> gameListeners;
-    private transient ArrayDeque<CardPile> undoStack;
+    private CardView[] views;
+    private PositionHash positionHash;
+    private MoveGenerator moveGenerator;
+    private int[] moveBuffer;
+    private HashMap<Long, Integer> positionVisits;
+    private ArrayList<GameListener> gameListeners;
+    private MoveHistory history;
+    private boolean autoMoving;
+    private MoveJournal journal;
 
     private int numeroJogadas = -1;
     private int completedCards = 0;
-    private int noOfAutoMoves = 0;
 
     private boolean autoComplete = true;
     private int moveHelpidx = 0;
@@ -51,13 +76,39 @@ public class GameModel implements Iterable<CardPile>, Serializable {
     private Object prevBlinkTo;
 
     private GameEvents state;
-    public boolean showBlackScreen = false;
-    public int gameNo;
+    private boolean showBlackScreen = false;
+    public long gameNo;
+    private String dealPackFile;
+    private DealPack dealPack;
+    private HintService hints;
+    /** Starts the analysis of the position once the player stops moving for a while. */
+    private Timer hintTimer;
+    private Component canvas;
+    /** State of the board as last published, for painting from any thread. */
+    private volatile BoardSnapshot snapshot;
+    /** Placement of the board, or null while not shown; from then on, changes are published on the event thread. */
+    private BoardLayout layout;
+    /** Something changed since the last snapshot, and its publication is queued. */
+    private boolean changed;
+    private int draggedPile = -1;
+    private int draggedCard = -1;
+    /** Publishes the changes made by an event once it is over, so a frame never shows part of them. */
+    private final Runnable publisher = new Runnable() {
+        @Override
+        public void run() {
+            if (changed) {
+                publish();
+            }
+        }
+    };
+    private int cardWidth = Card.CARD_WIDTH;
+    private int cardHeight = Card.CARD_HEIGHT;
+    private int boardHeight = UICardPanel.DISPLAY_HEIGHT;
 
     public GameModel() {
         gameListeners = new ArrayList<GameListener>();
         allPiles = new ArrayList<CardPile>();
-        undoStack = new ArrayDeque<CardPile>();
+        history = new MoveHistory();
 
         freeCells = new CardPile[4];
         tableau = new CardPileTableau[8];
@@ -80,16 +131,183 @@ public class GameModel implements Iterable<CardPile>, Serializable {
             tableauBkp[pile] = new CardPileTableau();
             allPiles.add(tableau[pile]);
         }
+        initTransientState();
 
         gameNo = getRandGameNo();
         startNewGame();
     }
 
-    private int getRandGameNo() {
-        return ThreadLocalRandom.current().nextInt(1, 32000 + 1);
+    private void initTransientState() {
+        positionHash = new PositionHash();
+        moveGenerator = new MoveGenerator();
+        moveBuffer = new int[MoveGenerator.MAX_MOVES];
+        positionVisits = new HashMap<Long, Integer>();
+        views = CardView.createViews(this);
+        hints = new HintService();
+        hintTimer = new Timer(HINT_IDLE_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                analysePosition();
+            }
+        });
+        hintTimer.setRepeats(false);
+        for (CardPile pile : allPiles) {
+            pile.setViews(this, views);
+        }
+    }
+
+    /**
+     * Sets the component the board is painted on. Cards and piles ask it to repaint their area when they change.
+     * 
+     * @param canvas
+     */
+    public void setCanvas(Component canvas) {
+        this.canvas = canvas;
+        for (CardView view : views) {
+            view.setCanvas(canvas);
+        }
+        for (CardPile pile : allPiles) {
+            pile.setCanvas(canvas);
+        }
+    }
+
+    /**
+     * Sets the size cards are drawn at, following the size of the board. The piles must be placed again after it.
+     * 
+     * @param cardWidth
+     * @param cardHeight
+     * @param offsetY
+     *            vertical offset between stacked cards
+     * @param boardHeight
+     *            height of the board, the cards bounce out of it on completion
+     */
+    public void setCardSize(int cardWidth, int cardHeight, int offsetY, int boardHeight) {
+        this.cardWidth = cardWidth;
+        this.cardHeight = cardHeight;
+        this.boardHeight = boardHeight;
+        for (CardView view : views) {
+            view.setSize(cardWidth, cardHeight);
+        }
+        for (CardPile pile : allPiles) {
+            pile.setOffsetY(offsetY);
+        }
+    }
+
+    private void setShowBlackScreen(boolean showBlackScreen) {
+        this.showBlackScreen = showBlackScreen;
+        viewChanged();
+        if (canvas != null) {
+            canvas.repaint();
+        }
+    }
+
+    /**
+     * Gets the view of a card on this board.
+     * 
+     * @param card
+     * @return view
+     */
+    public CardView getView(Card card) {
+        return views[card.getId()];
+    }
+
+    /**
+     * Sets the placement of the board, from the event thread. The first one shows the board: its state is published
+     * at once, and after every later change.
+     * 
+     * @param layout
+     *            a new instance whenever the placement or the card images change
+     */
+    void setLayout(BoardLayout layout) {
+        this.layout = layout;
+        publish();
+    }
+
+    /**
+     * Sets the card being dragged, drawn with the cards over it on top of the board.
+     * 
+     * @param pile
+     *            pile of the card, or null when the drag ends
+     * @param card
+     */
+    void setDragged(CardPile pile, Card card) {
+        draggedPile = pile != null ? allPiles.indexOf(pile) : -1;
+        draggedCard = pile != null ? card.getId() : -1;
+        viewChanged();
+    }
+
+    /**
+     * Gets the state of the board after the last change, to paint it. Unlike the piles and views, it can be read from
+     * any thread and never changes while being painted. On the event thread, changes not yet published are published
+     * first.
+     * 
+     * @return snapshot of the board, null while not shown
+     */
+    BoardSnapshot getSnapshot() {
+        if (SwingUtilities.isEventDispatchThread() && changed) {
+            publish();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Records that a pile or view changed. Once the board is shown, its publication is queued on the event thread, the
+     * only one changing the board, after the event making the change.
+     */
+    void viewChanged() {
+        if (!changed && layout != null) {
+            changed = true;
+            SwingUtilities.invokeLater(publisher);
+        }
+    }
+
+    /**
+     * Publishes the state of the board.
+     */
+    private void publish() {
+        changed = false;
+        snapshot = new BoardSnapshot(allPiles, views, layout, showBlackScreen, draggedPile, draggedCard);
     }
 
-    public void loadGame(int game) {
+    /**
+     * Draws a game of the selected deal pack or, without one, of the original 32000 MS deals.
+     */
+    private long getRandGameNo() {
+        return ThreadLocalRandom.current().nextLong(1, (dealPack != null ? dealPack.size() : Deal.MS_DEALS) + 1);
+    }
+
+    /**
+     * Gets the highest game number of the current deal source, the limit of a game chosen by number.
+     * 
+     * @return size of the selected deal pack, or the whole FreeCell Pro deal range
+     */
+    public long getMaxGameNo() {
+        return dealPack != null ? dealPack.size() : Deal.MAX_DEAL;
+    }
+
+    /**
+     * Selects the deals used by following games.
+     * 
+     * @param pack
+     *            deal pack, or null for the MS deals
+     */
+    public void setDealPack(DealPack pack) {
+        if (dealPack != null && dealPack != pack) {
+            try {
+                dealPack.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        dealPack = pack;
+        dealPackFile = pack != null ? pack.getFile().getPath() : null;
+    }
+
+    public DealPack getDealPack() {
+        return dealPack;
+    }
+
+    public void loadGame(long game) {
         gameNo = game;
         startNewGame();
     }
@@ -103,7 +321,7 @@ public class GameModel implements Iterable<CardPile>, Serializable {
         CardPile pile;
         Deck deck;
         try {
-            pile = Deal.initialize(gameNo);
+            pile = dealPack != null ? dealPack.initialize(gameNo) : Deal.initialize(gameNo);
             deck = new Deck(pile);
         } catch (Exception e) {
             e.printStackTrace();
@@ -115,6 +333,9 @@ public class GameModel implements Iterable<CardPile>, Serializable {
         for (CardPile p : allPiles) {
             p.clear();
         }
+        for (CardView view : views) {
+            view.reset();
+        }
 
         for (int i = 0; i < tableauBkp.length; i++) {
             tableauBkp[i].clear();
@@ -128,10 +349,6 @@ public class GameModel implements Iterable<CardPile>, Serializable {
             whichPile = (whichPile + 1) % tableau.length;
         }
 
-        for (int i = 0; i < tableau.length; i++) {
-            ((CardPileTableau) tableau[i]).updateCascades();
-        }
-        
         ResetarVariaveis();
 
     }
@@ -140,12 +357,14 @@ public class GameModel implements Iterable<CardPile>, Serializable {
         for (CardPile p : allPiles) {
             p.clear();
         }
+        for (CardView view : views) {
+            view.reset();
+        }
 
         for (int i = 0; i < tableauBkp.length; i++) {
             for (Card card : tableauBkp[i]) {
                 tableau[i].pushIgnoreRules(card);
             }
-            ((CardPileTableau) tableau[i]).updateCascades();
         }
         
         ResetarVariaveis();
@@ -156,21 +375,99 @@ public class GameModel implements Iterable<CardPile>, Serializable {
     	
     	state = NEW;
         completedCards = 0;
+        Arrays.fill(suitPiles, -1);
         numeroJogadas = 0;
-        undoStack.clear();
+        history.reset(toBoardState());
+        journalStart();
+        resetPositionHash();
         notifyChanges();
     }
+
+    private void resetPositionHash() {
+        BoardState board = toBoardState();
+        positionHash.reset(board);
+        moveGenerator.reset(board);
+        positionVisits.clear();
+        visitPosition(1);
+        // The piles were all loaded again.
+        viewChanged();
+    }
+
+    private void visitPosition(int delta) {
+        Long key = positionHash.getCanonicalKey();
+        Integer count = positionVisits.get(key);
+        int visits = (count != null ? count : 0) + delta;
+        if (visits > 0) {
+            positionVisits.put(key, visits);
+        } else {
+            positionVisits.remove(key);
+        }
+    }
+
+    /**
+     * Records the top cards of a pile as removed from the position hash and move generator, before they are removed.
+     */
+    private void trackRemove(CardPile pile, int count) {
+        int index = allPiles.indexOf(pile);
+        for (int i = pile.size() - 1; i >= pile.size() - count; i--) {
+            int id = pile.get(i).getId();
+            positionHash.remove(index, i, id);
+            moveGenerator.remove(index, i, id);
+        }
+    }
+
+    /**
+     * Records the top cards of a pile as added to the position hash and move generator, after they are added. It
+     * ends every move, so the new cards of the pile are published from here.
+     */
+    private void trackAdd(CardPile pile, int count) {
+        int index = allPiles.indexOf(pile);
+        for (int i = pile.size() - count; i < pile.size(); i++) {
+            int id = pile.get(i).getId();
+            positionHash.add(index, i, id);
+            moveGenerator.add(index, i, id);
+        }
+        viewChanged();
+    }
+
+    /**
+     * Gets the Zobrist hash of the current position.
+     * 
+     * @return hash, updated on every move
+     */
+    public long getPositionHash() {
+        return positionHash.getHash();
+    }
+
+    /**
+     * Gets the key of the current position regardless of free cell and column order.
+     * 
+     * @return canonical key, updated on every move
+     */
+    public long getPositionKey() {
+        return positionHash.getCanonicalKey();
+    }
+
+    /**
+     * Checks if the current position was already reached in this game, in any free cell or column order.
+     * 
+     * @return true if the position is repeated
+     */
+    public boolean isRepeatedPosition() {
+        Integer count = positionVisits.get(positionHash.getCanonicalKey());
+        return count != null && count > 1;
+    }
     
 
     public boolean moveFromPileToPile(Card card, CardPile source, CardPile target) {
         if (card.equals(source.peekTop())) {
             return moveCard(source, target);
         } else {
-            if (target.isAllowedtoAdd(card)) {
-                ArrayList<Card> cards = source.getCardListFrom(card);
-                int moves = getMaxNoOfCardsMovable(target.size() == 0);
-                if (cards.size() <= moves) {
-                    moveCards(cards, source, target);
+            // Runs only go to the tableau.
+            if (target instanceof CardPileTableau && target.isAllowedtoAdd(card)) {
+                int count = source.size() - source.indexOf(card);
+                if (count <= getMaxNoOfCardsMovable(target.size() == 0)) {
+                    moveCards(count, source, target);
                     return true;
                 }
             }
@@ -183,10 +480,25 @@ public class GameModel implements Iterable<CardPile>, Serializable {
      * Tableau and FreeCell Piles to Foundation Pile.
      */
     public void checkForAutoMoves() {
-        noOfAutoMoves = 0;
         if (!autoComplete)
             return;
 
+        int noOfAutoMoves = 0;
+        autoMoving = true;
+        try {
+            noOfAutoMoves = moveToFoundationPiles();
+        } finally {
+            autoMoving = false;
+        }
+        if (noOfAutoMoves > 0) {
+            notifyChanges();
+            validate();
+        }
+    }
+
+    private int moveToFoundationPiles() {
+        int noOfAutoMoves = 0;
+
         boolean moveHappened;
         int ord;
         int[] minval = getMinEligibleOrdinals();
@@ -231,11 +543,7 @@ public class GameModel implements Iterable<CardPile>, Serializable {
                 }
             }
         } while (moveHappened);
-        if (noOfAutoMoves > 0) {
-            notifyChanges();
-            validate();
-        }
-        return;
+        return noOfAutoMoves;
     }
 
     private boolean validarAutoMovimento(int ord, int minval) {
@@ -285,6 +593,10 @@ public class GameModel implements Iterable<CardPile>, Serializable {
     }
 
     private CardPile findEligibleCellInFoundationPile(Card card) {
+        int suit = card.getSuit().ordinal();
+        if (suitPiles[suit] != -1 && foundation[suitPiles[suit]].isAllowedtoAdd(card)) {
+            return foundation[suitPiles[suit]];
+        }
         for (CardPile pile : getFoundationPiles()) {
             if (pile.isAllowedtoAdd(card)) {
                 return pile;
@@ -313,18 +625,22 @@ public class GameModel implements Iterable<CardPile>, Serializable {
             return false;
         Card crd = source.peekTop();
         if (target.isAllowedtoAdd(crd)) {
+            CardView view = getView(crd);
             Rectangle pos = null;
-            int x = crd.getX(), y = crd.getY();
+            int x = view.getX(), y = view.getY();
             if (!(target instanceof CardPileTableau)) {
                 pos = target.getPosition();
             }
+            hints.cancel();
+            trackRemove(source, 1);
             target.push(crd);
             source.pop();
-            recordStep(source, target);
+            trackAdd(target, 1);
+            recordStep(source, target, 1);
             if (pos != null) {
-                crd.moveTo(pos.x, pos.y);
+                view.moveTo(pos.x, pos.y);
             } else {
-                crd.moveFrom(x, y);
+                view.moveFrom(x, y);
             }
             if(state.equals(NEW)) {
                 state = INPROGRESS;
@@ -334,314 +650,545 @@ public class GameModel implements Iterable<CardPile>, Serializable {
         return false;
     }
 
-    private void recordStep(CardPile source, CardPile target) {
+    /**
+     * Logs a move for undo. Automatic moves are flagged to be undone with the player move before them.
+     */
+    private void recordStep(CardPile source, CardPile target, int count) {
+        Card card = target.get(target.size() - count);
         if (target instanceof CardPileFoundation) {
-            completedCards++;
+            completedCards += count;
+            setSuitPile(card.getSuit().ordinal(), target);
         } else if (source instanceof CardPileFoundation) {
-            completedCards--;
+            completedCards -= count;
         }
         moveHelpidx = 0;
-        undoStack.push(source);
-        undoStack.push(target);
+        int move = Moves.encode(getMoveIndex(source, card), getMoveIndex(target, card), count);
+        move = autoMoving ? move | Moves.AUTO : move;
+        history.push(move);
+        if (journal != null) {
+            journal.move(move);
+        }
+        visitPosition(1);
     }
 
-    private boolean moveCards(ArrayList<Card> cards, CardPile source, CardPile target) {
+    private boolean moveCards(int count, CardPile source, CardPile target) {
         if (source.size() == 0)
             return false;
-        for (Card card2 : cards) {
-            target.push(card2);
+        hints.cancel();
+        trackRemove(source, count);
+        for (int i = source.size() - count; i < source.size(); i++) {
+            target.push(source.get(i));
+        }
+        for (int i = 0; i < count; i++) {
             source.pop();
         }
-        recordBulkStep(source, target, cards.size());
+        trackAdd(target, count);
+        recordStep(source, target, count);
         return true;
     }
 
-    private void recordBulkStep(CardPile source, CardPile target, int size) {
-        if (target instanceof CardPileFoundation) {
-            completedCards += size;
-        } else if (source instanceof CardPileFoundation) {
-            completedCards -= size;
+    /**
+     * Gets the index of a pile in logged moves. Foundations are numbered by suit, as in {@link BoardState}.
+     */
+    private int getMoveIndex(CardPile pile, Card card) {
+        return pile instanceof CardPileFoundation ? card.getSuit().ordinal() : allPiles.indexOf(pile);
+    }
+
+    /**
+     * Gets the pile of a logged move index.
+     */
+    private CardPile getMovePile(int index) {
+        return Moves.isFoundation(index) ? getSuitPile(index) : getPile(index);
+    }
+
+    /**
+     * Gets the foundation pile of a suit: the one the player put it on, so that undo, redo and seek never move a suit
+     * to another pile on screen. A suit not played yet gets the first pile no other suit holds.
+     */
+    private CardPile getSuitPile(int suit) {
+        if (suitPiles[suit] == -1) {
+            for (int i = 0; i < foundation.length && suitPiles[suit] == -1; i++) {
+                if (indexOf(suitPiles, i) == -1) {
+                    suitPiles[suit] = i;
+                }
+            }
         }
-        moveHelpidx = 0;
-        undoStack.push(source);
-        undoStack.push(new CardPileBulk(target, size));
+        return foundation[suitPiles[suit]];
     }
 
-    public void undoLastStep() {
-        if (noOfAutoMoves > 0) {
-            for (int i = 0; i < noOfAutoMoves; i++) {
-                undoMove();
-                noOfAutoMoves--;
+    /**
+     * Records the foundation pile a suit was played on. A suit that held the pile before, now undone, loses it.
+     */
+    private void setSuitPile(int suit, CardPile pile) {
+        int i = indexOf(foundation, pile);
+        int other = indexOf(suitPiles, i);
+        if (other != -1) {
+            suitPiles[other] = -1;
+        }
+        suitPiles[suit] = i;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(Object[] values, Object value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
             }
         }
-        undoMove();
+        return -1;
     }
 
+    /**
+     * Undoes the last player move, together with the automatic moves that followed it.
+     */
     public void undoMove() {
-        if (!undoStack.isEmpty()) {
-            CardPile target = undoStack.pop();
-            CardPile source = undoStack.pop();
-            if (target instanceof CardPileBulk) {
-                CardPileBulk bulk = (CardPileBulk) target;
-                ArrayList<Card> cards = new ArrayList<Card>();
-                for (int i = 0; i < bulk.count; i++) {
-                    cards.add(bulk.pile.pop());
-                }
-                Collections.reverse(cards);
-                for (Card card : cards) {
-                    source.pushIgnoreRules(card);
+        if (!history.canUndo()) {
+            return;
+        }
+        hints.cancel();
+        int move;
+        do {
+            move = undoStep();
+        } while (Moves.isAuto(move) && history.canUndo());
+        moveHelpidx = 0;
+        notifyChanges();
+    }
+
+    /**
+     * Redoes the last undone player move, together with the automatic moves that followed it.
+     */
+    public void redoMove() {
+        if (!history.canRedo()) {
+            return;
+        }
+        hints.cancel();
+        do {
+            redoStep();
+        } while (history.canRedo() && Moves.isAuto(history.peekRedo()));
+        moveHelpidx = 0;
+        notifyChanges();
+    }
+
+    private int undoStep() {
+        int move = history.undo();
+        visitPosition(-1);
+        transfer(getMovePile(Moves.target(move)), getMovePile(Moves.source(move)), Moves.count(move));
+        if (journal != null) {
+            journal.undo();
+        }
+        return move;
+    }
+
+    private void redoStep() {
+        int move = history.redo();
+        transfer(getMovePile(Moves.source(move)), getMovePile(Moves.target(move)), Moves.count(move));
+        visitPosition(1);
+        if (journal != null) {
+            journal.redo();
+        }
+    }
+
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Gets the no of moves made, counting automatic ones.
+     * 
+     * @return current move of the history
+     */
+    public int getMoveNo() {
+        return history.getPosition();
+    }
+
+    /**
+     * Gets the no of moves that can be reached by undo and redo.
+     * 
+     * @return history size
+     */
+    public int getMoveCount() {
+        return history.size();
+    }
+
+    /**
+     * Jumps to the position after a given move of the history, from the nearest checkpoint. Later moves can still be
+     * redone.
+     * 
+     * @param move
+     *            from 0 (start of the game) to {@link #getMoveCount()}
+     */
+    public void seekMove(int move) {
+        hints.cancel();
+        clearHint();
+        loadPiles(history.seek(move));
+        moveHelpidx = 0;
+        resetPositionHash();
+        if (journal != null) {
+            journal.seek(move);
+        }
+        notifyChanges();
+    }
+
+    private void journalStart() {
+        if (journal != null) {
+            journal.start(gameNo, dealPackFile, history.getStart());
+        }
+    }
+
+    /**
+     * Starts journaling every move to a file, replacing its content with the current game.
+     * 
+     * @param file
+     *            journal file
+     * @return true if the journal holds the game
+     */
+    public boolean openJournal(File file) {
+        try {
+            journal = new MoveJournal(file);
+            compactJournal();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Unable to open journal: " + file);
+            journal = null;
+            return false;
+        }
+    }
+
+    private void compactJournal() throws IOException {
+        journal.rewrite(gameNo, dealPackFile, history.getStart(), history.toArray(), history.getPosition());
+    }
+
+    /**
+     * Stops journaling, on a clean exit. The journal is compacted, or deleted if there is no game to resume.
+     * 
+     * @param delete
+     *            true to delete the journal
+     */
+    public void closeJournal(boolean delete) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            if (!delete) {
+                compactJournal();
+            }
+            journal.close();
+            if (delete) {
+                journal.getFile().delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        journal = null;
+    }
+
+    /**
+     * Rebuilds the game of a journal: deal, then moves, undos, redos and seeks as they happened.
+     * 
+     * @param file
+     *            journal file
+     * @return true if a game was restored
+     */
+    public boolean replayJournal(File file) {
+        MoveJournal saved = journal;
+        journal = null;
+        try {
+            boolean restored = MoveJournal.replay(file, new MoveJournal.Listener() {
+                @Override
+                public void start(long game, String pack, BoardState board) {
+                    restoreStart(game, pack, board);
                 }
-                if (source instanceof CardPileTableau) {
-                    ((CardPileTableau) source).updateCascades();
+
+                @Override
+                public void move(int move) {
+                    restoreMove(move);
                 }
-            } else {
-                source.pushIgnoreRules(target.popIgnoreRules());
-                if (source instanceof CardPileTableau) {
-                    ((CardPileTableau) source).updateCascades();
+
+                @Override
+                public void undo() {
+                    if (history.canUndo()) {
+                        undoStep();
+                    }
                 }
-                if (target instanceof CardPileTableau) {
-                    ((CardPileTableau) target).deleteFromCascade(source.peekTop());
+
+                @Override
+                public void redo() {
+                    if (history.canRedo()) {
+                        redoStep();
+                    }
                 }
-                if (target instanceof CardPileFoundation) {
-                    completedCards--;
+
+                @Override
+                public void seek(int move) {
+                    if (move <= history.size()) {
+                        restoreSeek(move);
+                    }
                 }
+            });
+            if (restored) {
+                System.out.println("Game restored from journal: " + history.getPosition() + " moves");
+                notifyChanges();
             }
-            moveHelpidx = 0;
-            notifyChanges();
+            return restored;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } catch (RuntimeException e) {
+            // A record that does not fit the game, start the deal over.
+            e.printStackTrace();
+            System.err.println("Corrupted journal: " + file);
+            startNewGame();
+            return true;
+        } finally {
+            journal = saved;
+        }
+    }
+
+    private void restoreStart(long game, String pack, BoardState board) {
+        DealPack dealPack = null;
+        if (pack != null) {
+            try {
+                dealPack = DealPack.open(new File(pack));
+            } catch (IOException e) {
+                System.err.println("Deal pack not found: " + pack);
+            }
+        }
+        setDealPack(dealPack);
+        loadGame(game);
+        if (!board.equals(toBoardState())) {
+            setBoardState(board);
+        }
+    }
+
+    private void restoreMove(int move) {
+        history.push(move);
+        transfer(getMovePile(Moves.source(move)), getMovePile(Moves.target(move)), Moves.count(move));
+        visitPosition(1);
+        state = INPROGRESS;
+    }
+
+    private void restoreSeek(int move) {
+        loadPiles(history.seek(move));
+        resetPositionHash();
+    }
+
+    /**
+     * Saves the game on exit, to be resumed by {@link #restoreGame(SavedGame)}.
+     * 
+     * @param file
+     * @throws IOException
+     */
+    public void saveGame(File file) throws IOException {
+        new SavedGame(gameNo, dealPackFile, history.getStart(), history.toArray(), history.getPosition(),
+            toBoardState(), numeroJogadas, autoComplete).write(file);
+    }
+
+    /**
+     * Resumes a saved game: deal, moves and position in the history. If the moves do not lead to the saved position,
+     * as when the deal pack is gone, the saved position is set up without history.
+     * 
+     * @param saved
+     */
+    public void restoreGame(SavedGame saved) {
+        MoveJournal current = journal;
+        journal = null;
+        try {
+            restoreStart(saved.getGameNo(), saved.getDealPack(), saved.getStart());
+            for (int move : saved.getMoves()) {
+                restoreMove(move);
+            }
+            if (saved.getPosition() < history.size()) {
+                restoreSeek(saved.getPosition());
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        if (!saved.getBoard().equals(toBoardState())) {
+            System.err.println("Saved moves do not lead to the saved position");
+            setBoardState(saved.getBoard());
+        }
+        numeroJogadas = saved.getNoOfPlays();
+        autoComplete = saved.isAutoComplete();
+        journal = current;
+        if (journal != null) {
+            try {
+                compactJournal();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        System.out.println("Game restored: " + history.getPosition() + " moves");
+        notifyChanges();
+    }
+
+    /**
+     * Moves the top cards of a pile without rules nor animation, for undo and redo.
+     */
+    private void transfer(CardPile from, CardPile to, int count) {
+        trackRemove(from, count);
+        for (int i = from.size() - count; i < from.size(); i++) {
+            to.pushIgnoreRules(from.get(i));
+        }
+        for (int i = 0; i < count; i++) {
+            from.popIgnoreRules();
+        }
+        trackAdd(to, count);
+        if (to instanceof CardPileFoundation) {
+            completedCards += count;
+        } else if (from instanceof CardPileFoundation) {
+            completedCards -= count;
         }
     }
 
     public void validate() {
         if (completedCards == 52) {
             completedCards = 0;
-            new Thread(new Runnable() {
+            state = COMPLETE;
+            // Steps of the win sequence, run by the animation clock instead of a sleeping thread.
+            final AnimationClock clock = AnimationClock.getInstance();
+            clock.schedule(500, new Runnable() {
                 @Override
                 public void run() {
-                    state = COMPLETE;
-                    try {
-                        Thread.sleep(500);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
                     CardPile[] cardPile1 = getFoundationPiles();
-                    Card card = null;
-                    ListIterator<Card> li0 = cardPile1[0].reverseIterator();
-                    ListIterator<Card> li1 = cardPile1[1].reverseIterator();
-                    ListIterator<Card> li2 = cardPile1[2].reverseIterator();
-                    ListIterator<Card> li3 = cardPile1[3].reverseIterator();
-
-                    int targetY = UICardPanel.DISPLAY_HEIGHT + Card.CARD_HEIGHT;
-
-                    for (int i = 0; i < 52; i++) {
-                        synchronized (li0) {
-                            if (li0.hasPrevious()) {
-                                card = li0.previous();
-                                card.turnFaceDown();
-                                card.bounce(200, targetY, (i * 250));
-                            }
-                        }
-                        synchronized (li1) {
-                            if (li1.hasPrevious()) {
-                                card = li1.previous();
-                                card.turnFaceDown();
-                                card.bounce(300, targetY, (i * 250));
-                            }
-                        }
-                        synchronized (li2) {
-                            if (li2.hasPrevious()) {
-                                card = li2.previous();
-                                card.turnFaceDown();
-                                card.bounce(400, targetY, (i * 250));
+                    int targetY = boardHeight + cardHeight;
+                    int step = 100 * cardWidth / Card.CARD_WIDTH;
+
+                    for (int i = 0; i < 13; i++) {
+                        for (int p = 0; p < cardPile1.length; p++) {
+                            int idx = cardPile1[p].size() - 1 - i;
+                            if (idx >= 0) {
+                                CardView view = getView(cardPile1[p].get(idx));
+                                view.turnFaceDown();
+                                view.bounce(2 * step + p * step, targetY, (i * 250));
                             }
                         }
-                        synchronized (li3) {
-                            if (li3.hasPrevious()) {
-                                card = li3.previous();
-                                card.turnFaceDown();
-                                card.bounce(500, targetY, (i * 250));
-                            }
-                        }
-                    }
-                    try {
-                        Thread.sleep(6000);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
                     }
-                    showBlackScreen = true;
-                    notifyChanges();
-                    try {
-                        Thread.sleep(3000);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    fireGameEvent(COMPLETE);
-                    showBlackScreen = false;
+                    clock.schedule(6000, new Runnable() {
+                        @Override
+                        public void run() {
+                            setShowBlackScreen(true);
+                            notifyChanges();
+                            clock.schedule(3000, new Runnable() {
+                                @Override
+                                public void run() {
+                                    fireGameEvent(COMPLETE);
+                                    setShowBlackScreen(false);
+                                }
+                            });
+                        }
+                    });
                 }
-            }).start();
+            });
         }
-        if (!hasMoves(false)) {
+        if (!moveGenerator.hasMoves()) {
             fireGameEvent(NOMOVESLEFT);
         }
     }
 
-    private boolean hasMoves(boolean showHelp) {
-        CardPile[] tPiles = getTableauPiles();
-        CardPile[] fcPiles = getFreeCellPiles();
-        CardPile[] fPiles = getFoundationPiles();
-
-        for (int j = 0; j < fcPiles.length; j++) {
-            if (fcPiles[j].size() == 0) {
-                return true;
-            } else {
-                CardPile cardPile2 = fcPiles[j];
-                for (int i = 0; i < tPiles.length; i++) {
-                    CardPile cardPile1 = tPiles[i];
-                    if (cardPile1.size() > 0) {
-                        if (cardPile1.isAllowedtoAdd(cardPile2.peekTop())) {
-                            return true;
-                        }
-                    } else {
-                        return true;
-                    }
-                }
-                for (int i = 0; i < fPiles.length; i++) {
-                    if (fPiles[i].isAllowedtoAdd(cardPile2.peekTop())) {
-                        return true;
-                    }
-                }
-            }
-        }
+    /**
+     * Sets the search budget of the hint solver.
+     *
+     * @param maxNodes
+     *            max positions expanded
+     * @param maxMillis
+     *            max search time
+     */
+    public void setHintBudget(int maxNodes, long maxMillis) {
+        hints.getSolver().setMaxNodes(maxNodes);
+        hints.getSolver().setMaxMillis(maxMillis);
+    }
 
-        for (int i = 0; i < tPiles.length; i++) {
-            CardPile cardPile1 = tPiles[i];
-            if (cardPile1.size() == 0) {
-                return true;
-            } else {
-                for (int j = i + 1; j < tPiles.length; j++) {
-                    CardPile cardPile2 = tPiles[j];
-                    boolean canMove = cardPile2.size() == 0 || cardPile2.isAllowedtoAdd(cardPile1.peekTop())
-                        || cardPile1.isAllowedtoAdd(cardPile2.peekTop());
-                    if (canMove)
-                        return true;
-                }
-                for (int j = 0; j < fPiles.length; j++) {
-                    if (fPiles[j].isAllowedtoAdd(cardPile1.peekTop()))
-                        return true;
-                }
-            }
+    /**
+     * Starts analysing the current position in the background, so the next hint is ready when asked for. Called when
+     * the player stays {@value #HINT_IDLE_MILLIS} ms on a position, or asks for a hint, so quick play starts no search.
+     */
+    private void analysePosition() {
+        if (state != COMPLETE) {
+            hints.analyse(toBoardState(), positionHash.getHash());
         }
-        return false;
     }
 
+    /**
+     * Shows the first move of the solution of the current position, as analysed in the background, or of the best
+     * line found so far. Falls back to cycling through the available moves when the solver has nothing to suggest
+     * yet.
+     */
     public void findHint() {
-        CardPileTableau[] tPiles = (CardPileTableau[]) getTableauPiles();
-        CardPile[] fcPiles = getFreeCellPiles();
-        CardPile[] fPiles = getFoundationPiles();
-        int idx = 0;
-        int maxMoves = getMaxNoOfCardsMovable(false);
-
-        for (int i = 0; i < tPiles.length; i++) {
-            CardPileTableau cardPile1 = tPiles[i];
-            if (cardPile1.size() > 0) {
-                ArrayList<Card> cards = cardPile1.getCascades(maxMoves);
-                for (int j = 0; j < tPiles.length; j++) {
-                    if (j == i)
-                        continue;
-                    CardPileTableau cardPile2 = tPiles[j];
-                    if (cardPile2.size() == 0) {
-                        int maxMovesToBlnk = getMaxNoOfCardsMovable(true);
-                        int cSize = cards.size();
-                        int bIdx = maxMovesToBlnk > cSize ? cSize : cSize - maxMovesToBlnk;
-                        if (showHint(idx, cards.get(bIdx), cardPile2)) {
-                            return;
-                        }
-                        idx++;
-                    } else {
-                        for (Card card : cards) {
-                            if (cardPile2.isAllowedtoAdd(card)) {
-                                if (showHint(idx, card, cardPile2)) {
-                                    return;
-                                }
-                                idx++;
-                            }
-                        }
-                    }
-                }
-            }
+        BoardState board = toBoardState();
+        int move = board.nextAutoMove();
+        if (move == -1) {
+            move = hints.getHint(positionHash.getHash());
+            analysePosition();
         }
-
-        for (int j = 0; j < fcPiles.length; j++) {
-            if (fcPiles[j].size() > 0) {
-                CardPile cardPile2 = fcPiles[j];
-                for (int i = 0; i < tPiles.length; i++) {
-                    CardPile cardPile1 = tPiles[i];
-                    if (cardPile1.size() > 0) {
-                        if (cardPile1.isAllowedtoAdd(cardPile2.peekTop())) {
-                            if (showHint(idx, cardPile2.peekTop(), cardPile1)) {
-                                return;
-                            }
-                            idx++;
-                        }
-                    }
-                }
-                for (int i = 0; i < fPiles.length; i++) {
-                    if (fPiles[i].isAllowedtoAdd(cardPile2.peekTop())) {
-                        if (showHint(idx, cardPile2.peekTop(), fPiles[i])) {
-                            return;
-                        }
-                        idx++;
-                    }
-                }
-            }
+        if (move == -1 || !isLegal(move)) {
+            // None yet, or a hash collision: the move belongs to another position.
+            findScanHint();
+            return;
         }
+        Card card = Card.get(board.getMovedCard(move));
+        showHint(card, getMovePile(Moves.target(move)));
+    }
 
-        for (int j = 0; j < fcPiles.length; j++) {
-            if (fcPiles[j].size() == 0) {
-                for (int i = 0; i < tPiles.length; i++) {
-                    if (showHint(idx, tPiles[i].peekTop(), fcPiles[j])) {
-                        return;
-                    }
-                    idx++;
-                }
-                break;
+    /**
+     * Tells whether a move is one of the legal moves of the current position.
+     */
+    private boolean isLegal(int move) {
+        int count = moveGenerator.generate(moveBuffer);
+        for (int i = 0; i < count; i++) {
+            if (moveBuffer[i] == move) {
+                return true;
             }
         }
+        return false;
+    }
 
-        if (idx > 0 && moveHelpidx == idx) {
-            moveHelpidx = 0;
-            findHint();
-        } else {
-            moveHelpidx = 0;
+
+    /**
+     * Cycles through the legal moves, one more on each call.
+     */
+    private void findScanHint() {
+        int count = moveGenerator.generate(moveBuffer);
+        if (count == 0) {
+            return;
         }
+        int move = moveBuffer[moveHelpidx % count];
+        moveHelpidx = (moveHelpidx + 1) % count;
+        CardPile source = getPile(Moves.source(move));
+        Card card = source.get(source.size() - Moves.count(move));
+        showHint(card, getMovePile(Moves.target(move)));
     }
 
-    private boolean showHint(int idx, Card card, CardPile cardPile2) {
-        if (idx == moveHelpidx) {
-            clearHint();
+    private void showHint(Card card, CardPile cardPile2) {
+        clearHint();
 
-            card.blink(0);
-            prevBlinkFrom = card;
+        getView(card).blink(0);
+        prevBlinkFrom = card;
 
-            if (cardPile2.size() > 0) {
-                cardPile2.peekTop().blink(1000);
-                prevBlinkTo = cardPile2.peekTop();
-            } else {
-                cardPile2.blink(1000);
-                prevBlinkTo = cardPile2;
-            }
-            moveHelpidx++;
-            return true;
+        if (cardPile2.size() > 0) {
+            getView(cardPile2.peekTop()).blink(1000);
+            prevBlinkTo = cardPile2.peekTop();
+        } else {
+            cardPile2.blink(1000);
+            prevBlinkTo = cardPile2;
         }
-        return false;
     }
 
     private void clearHint() {
         if (prevBlinkFrom != null) {
-            ((Card) prevBlinkFrom).stopBlink();
+            getView((Card) prevBlinkFrom).stopBlink();
         }
         if (prevBlinkTo != null) {
             if (prevBlinkTo instanceof Card) {
-                ((Card) prevBlinkTo).stopBlink();
+                getView((Card) prevBlinkTo).stopBlink();
             } else {
                 ((CardPile) prevBlinkTo).stopBlink();
             }
@@ -649,37 +1196,12 @@ public class GameModel implements Iterable<CardPile>, Serializable {
     }
 
     private int getMaxNoOfCardsMovable(boolean toEmpty) {
-        int tCount = 0, fCount = 0;
-        CardPile[] tPiles = getTableauPiles();
-        CardPile[] fcPiles = getFreeCellPiles();
-
-        for (int j = 0; j < fcPiles.length; j++) {
-            if (fcPiles[j].size() == 0) {
-                fCount++;
-            }
-        }
-
-        for (int j = 0; j < tPiles.length; j++) {
-            if (tPiles[j].size() == 0) {
-                tCount++;
-            }
-        }
-        if (tCount > 0) {
-            if (fCount > 0) {
-                fCount--;
-                tCount++;
-            }
-            if (toEmpty) {
-                tCount--;
-            }
-            tCount = ((tCount * (tCount + 1)) / 2);
-        }
-
-        return tCount + fCount + 1;
+        return moveGenerator.getMaxMovable(toEmpty);
     }
 
     public void notifyChanges() {
     	fireGameEvent(MOVE, 52 - completedCards, numeroJogadas);
+        hintTimer.restart();
     }
 
     public synchronized void addGameListener(GameListener l) {
@@ -705,6 +1227,84 @@ public class GameModel implements Iterable<CardPile>, Serializable {
         return allPiles.iterator();
     }
 
+    /**
+     * Gets a pile by its index in {@link Moves} numbering.
+     * 
+     * @param index
+     *            foundations 0-3, free cells 4-7, tableau 8-15
+     * @return pile
+     */
+    public CardPile getPile(int index) {
+        return allPiles.get(index);
+    }
+
+    /**
+     * Encodes the current position.
+     * 
+     * @return compact, immutable position
+     */
+    public BoardState toBoardState() {
+        int[] cells = new int[freeCells.length];
+        for (int i = 0; i < freeCells.length; i++) {
+            cells[i] = freeCells[i].size() > 0 ? freeCells[i].peekTop().getId() : BoardState.EMPTY;
+        }
+        int[][] columns = new int[tableau.length][];
+        for (int i = 0; i < tableau.length; i++) {
+            columns[i] = new int[tableau[i].size()];
+            for (int j = 0; j < columns[i].length; j++) {
+                columns[i][j] = tableau[i].get(j).getId();
+            }
+        }
+        int[] foundations = new int[foundation.length];
+        for (CardPile pile : foundation) {
+            if (pile.size() > 0) {
+                foundations[pile.peekTop().getSuit().ordinal()] = pile.size();
+            }
+        }
+        return BoardState.create(cells, columns, foundations);
+    }
+
+    /**
+     * Replaces the current position. Undo history is cleared.
+     * 
+     * @param board
+     *            position to set up
+     */
+    public void setBoardState(BoardState board) {
+        loadPiles(board);
+        moveHelpidx = 0;
+        history.reset(board);
+        journalStart();
+        resetPositionHash();
+        notifyChanges();
+    }
+
+    private void loadPiles(BoardState board) {
+        for (CardPile p : allPiles) {
+            p.clear();
+        }
+        for (CardView view : views) {
+            view.reset();
+        }
+        for (int i = 0; i < freeCells.length; i++) {
+            if (board.getFreeCell(i) != BoardState.EMPTY) {
+                freeCells[i].pushIgnoreRules(Card.get(board.getFreeCell(i)));
+            }
+        }
+        for (int i = 0; i < tableau.length; i++) {
+            for (int j = 0; j < board.getHeight(i); j++) {
+                tableau[i].pushIgnoreRules(Card.get(board.getCard(i, j)));
+            }
+        }
+        for (int s = 0; s < foundation.length; s++) {
+            for (int r = 0; r < board.getFoundation(s); r++) {
+                getSuitPile(s).pushIgnoreRules(Card.get(s * BoardState.NO_OF_RANKS + r));
+            }
+        }
+        completedCards = board.getCardsOnFoundation();
+        state = completedCards > 0 ? INPROGRESS : NEW;
+    }
+
     public CardPile getTableauPile(int i) {
         return tableau[i];
     }
@@ -736,10 +1336,4 @@ public class GameModel implements Iterable<CardPile>, Serializable {
     public GameEvents getState() {
         return state;
     }
-
-    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
-        ois.defaultReadObject();
-        gameListeners = new ArrayList<GameListener>();
-        undoStack = new ArrayDeque<CardPile>();
-    }
 }
@@ -0,0 +1,163 @@
+package com.sri.jfreecell;
+
+/**
+ * Finds the pile and card under a point of the board with arithmetic on its layout, instead of testing every card.<br>
+ * The top row holds the free cells and the foundation, one slot per pile; the columns of the tableau start half a slot
+ * further. Within a column, cards are stacked at a fixed offset, a covered card showing only a strip at its top. The
+ * index keeps the layout of the board and reads the sizes of the piles when asked, so it stays in sync with the moves.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+final class HitIndex {
+
+    /** No pile or card at the point. */
+    static final int NONE = -1;
+
+    private static final int FIRST_FREECELL = 4;
+    private static final int FIRST_TABLEAU = 8;
+    private static final int NO_OF_COLUMNS = 8;
+    /** Slot of the first foundation in the top row, after the free cells and a gap. */
+    private static final int FOUNDATION_SLOT = 5;
+    /** Height showing of a covered card, at the size of the card images. */
+    private static final int VISIBLE_STRIP = 15;
+
+    private final GameModel model;
+    private int left;
+    private int top;
+    private int tableauTop;
+    private int incrX;
+    private int cardWidth;
+    private int cardHeight;
+    private int offsetY;
+    private int strip;
+
+    HitIndex(GameModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Sets the layout of the board.
+     *
+     * @param left
+     *            x of the first free cell
+     * @param top
+     *            y of the top row
+     * @param tableauTop
+     *            y of the tableau
+     * @param incrX
+     *            distance between two slots
+     * @param cardWidth
+     * @param cardHeight
+     * @param offsetY
+     *            vertical offset between stacked cards
+     */
+    void setLayout(int left, int top, int tableauTop, int incrX, int cardWidth, int cardHeight, int offsetY) {
+        this.left = left;
+        this.top = top;
+        this.tableauTop = tableauTop;
+        this.incrX = incrX;
+        this.cardWidth = cardWidth;
+        this.cardHeight = cardHeight;
+        this.offsetY = offsetY;
+        this.strip = Math.min(offsetY, cardHeight * VISIBLE_STRIP / Card.CARD_HEIGHT);
+    }
+
+    /**
+     * Finds the pile whose area contains a point.
+     *
+     * @param x
+     * @param y
+     * @return pile index, see {@link GameModel#getPile(int)}, or {@link #NONE}
+     */
+    int pileAt(int x, int y) {
+        if (y >= top && y < top + cardHeight) {
+            return topRowPile(x);
+        }
+        if (y >= tableauTop && y < tableauTop + 3 * cardHeight) {
+            return column(x);
+        }
+        return NONE;
+    }
+
+    /**
+     * Finds the card of a free cell or column showing at a point.
+     *
+     * @param x
+     * @param y
+     * @return pile and position of the card, see {@link #pileOf(int)} and {@link #depthOf(int)}, or {@link #NONE}
+     */
+    int cardAt(int x, int y) {
+        if (y >= top && y < top + cardHeight) {
+            int pile = topRowPile(x);
+            int size = pile >= FIRST_FREECELL ? model.getPile(pile).size() : 0;
+            return size > 0 ? hit(pile, size - 1) : NONE;
+        }
+        int pile = column(x);
+        if (pile == NONE || y < tableauTop) {
+            return NONE;
+        }
+        int size = model.getPile(pile).size();
+        int dy = y - tableauTop;
+        int depth = dy / offsetY;
+        if (depth >= size - 1) {
+            // The top card shows whole.
+            return size > 0 && dy < (size - 1) * offsetY + cardHeight ? hit(pile, size - 1) : NONE;
+        }
+        return dy - depth * offsetY < strip ? hit(pile, depth) : NONE;
+    }
+
+    /**
+     * Gets the pile of a card found by {@link #cardAt(int, int)}.
+     *
+     * @param hit
+     * @return pile index
+     */
+    static int pileOf(int hit) {
+        return hit >> 8;
+    }
+
+    /**
+     * Gets the position in its pile of a card found by {@link #cardAt(int, int)}.
+     *
+     * @param hit
+     * @return position, 0 for the bottom card
+     */
+    static int depthOf(int hit) {
+        return hit & 0xFF;
+    }
+
+    private static int hit(int pile, int depth) {
+        return pile << 8 | depth;
+    }
+
+    private int topRowPile(int x) {
+        int slot = slot(x - left);
+        if (slot == NONE) {
+            return NONE;
+        }
+        if (slot < FOUNDATION_SLOT - 1) {
+            return FIRST_FREECELL + slot;
+        }
+        if (slot >= FOUNDATION_SLOT && slot < FOUNDATION_SLOT + 4) {
+            return slot - FOUNDATION_SLOT;
+        }
+        return NONE;
+    }
+
+    private int column(int x) {
+        int slot = slot(x - left - incrX / 2);
+        return slot != NONE && slot < NO_OF_COLUMNS ? FIRST_TABLEAU + slot : NONE;
+    }
+
+    /**
+     * Gets the slot whose card spans a distance from the left of the row.
+     */
+    private int slot(int dx) {
+        if (dx < 0) {
+            return NONE;
+        }
+        int slot = dx / incrX;
+        return dx - slot * incrX < cardWidth ? slot : NONE;
+    }
+}
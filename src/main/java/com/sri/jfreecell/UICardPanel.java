@@ -1,28 +1,24 @@
 package com.sri.jfreecell;
 
+import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
 import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Random;
-import java.util.Set;
-import java.util.concurrent.CountDownLatch;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
 
-import org.pushingpixels.trident.Timeline;
-import org.pushingpixels.trident.Timeline.RepeatBehavior;
-import org.pushingpixels.trident.TimelineScenario;
-import org.pushingpixels.trident.callback.TimelineScenarioCallback;
-import org.pushingpixels.trident.swing.SwingRepaintTimeline;
-
-import com.sri.jfreecell.firework.VolleyExplosion;
+import com.sri.jfreecell.firework.Fireworks;
 
 /**
  * JPanel that displays cards, and manages the mouse.
@@ -70,13 +66,15 @@ public class UICardPanel extends JComponent implements MouseListener, MouseMotio
     private static final int FREE_CELL_BOTTOM = FREE_CELL_TOP + Card.CARD_HEIGHT;
 
     private static final int TABLEAU_TOP = 2 * GAP + Math.max(FOUNDATION_BOTTOM, FREE_CELL_BOTTOM);
-    private static final int TABLEAU_START_X = GAP;
     private static final int TABLEAU_INCR_X = Card.CARD_WIDTH + GAP;
 
+    /** Size of the board with the cards at the size of their images. */
     public static final int DISPLAY_WIDTH = (NUMBER_OF_PILES + 1) * TABLEAU_INCR_X;
     public static final int DISPLAY_HEIGHT = TABLEAU_TOP + 3 * Card.CARD_HEIGHT + GAP;
+    /** Smallest scale of the board; a smaller window cuts it. */
+    private static final double MIN_SCALE = 0.5;
 
-    private static final Color BACKGROUND_COLOR = new Color(0, 110, 135);
+    static final Color BACKGROUND_COLOR = new Color(0, 110, 135);
 
     // fields
 
@@ -92,116 +90,214 @@ public class UICardPanel extends JComponent implements MouseListener, MouseMotio
     private CardPile highlightedPile = null;
 
     private GameModel model;
-    private Set<VolleyExplosion> volleys;
-    private Map<VolleyExplosion, TimelineScenario> volleyScenarios;
+    private final BoardLayers layers;
+    private final HitIndex hitIndex;
+    /** Size of the cards on the board, scaled to its size. */
+    private int cardWidth = Card.CARD_WIDTH;
+    private int cardHeight = Card.CARD_HEIGHT;
+    /** Placement last handed to the model. */
+    private BoardLayout boardLayout;
+    private final Fireworks fireworks = new Fireworks();
+    /** Repaints the whole board at every frame of the animation clock while the fireworks play. */
+    private final Animated fireworkRepaint = new Animated() {
+        @Override
+        public void animate(int property, float a, float b) {
+            repaint();
+        }
 
-    /** Constructor sets size, colors, and adds mouse listeners. */
+        @Override
+        public void animationEnded(int property, boolean completed) {
+        }
+    };
+    private ActiveRenderer renderer;
+    private FrameProbe probe;
+
+    /**
+     * Constructor sets size, colors, and adds mouse listeners. The board is only repainted where cards and piles
+     * change, as they ask it; there is no repaint loop. The piles are placed again whenever the board is resized.
+     */
     public UICardPanel(GameModel mdl) {
         model = mdl;
-        setPreferredSize(new Dimension(DISPLAY_WIDTH, DISPLAY_HEIGHT));
+        model.setCanvas(this);
+        layers = new BoardLayers();
+        hitIndex = new HitIndex(model);
+        setPreferredSize(getInitialSize());
         setBackground(Color.green);
 
         // ... Add mouse listeners.
         this.addMouseListener(this);
         this.addMouseMotionListener(this);
 
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                layoutBoard();
+            }
+        });
+        // Moved to a screen of another scale.
+        addPropertyChangeListener("graphicsConfiguration", new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                layoutBoard();
+            }
+        });
+        layoutBoard();
+    }
+
+    /**
+     * Gets the size the board opens with: the size of the card images, enlarged on big screens whose pixels are
+     * not already scaled by the system, so the board takes about the same part of the screen.
+     * 
+     * @return size
+     */
+    static Dimension getInitialSize() {
+        double scale = 1;
+        if (!GraphicsEnvironment.isHeadless()) {
+            Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+            scale = Math.max(1, Math.floor(screen.height / (2.5 * DISPLAY_HEIGHT) * 4) / 4);
+        }
+        return new Dimension((int) (DISPLAY_WIDTH * scale), (int) (DISPLAY_HEIGHT * scale));
+    }
+
+    /**
+     * Places the piles to fill the board. Cards, gaps and offsets are scaled by the same factor, the largest keeping
+     * the whole board visible, and the piles are centered horizontally. The placement is handed to the painter in a
+     * new {@link BoardLayout}. The card images are then prepared for the new size, in device pixels, in background;
+     * the board is painted again, with a fresh layout, once they are ready.
+     */
+    private void layoutBoard() {
+        int width = getWidth() > 0 ? getWidth() : getPreferredSize().width;
+        int height = getHeight() > 0 ? getHeight() : getPreferredSize().height;
+        double scale = Math.max(MIN_SCALE, Math.min((double) width / DISPLAY_WIDTH, (double) height / DISPLAY_HEIGHT));
+        cardWidth = (int) Math.round(Card.CARD_WIDTH * scale);
+        cardHeight = (int) Math.round(Card.CARD_HEIGHT * scale);
+        int gap = Math.max(1, (int) Math.round(GAP * scale));
+        int incrX = cardWidth + gap;
+        int left = Math.max(0, (width - (NUMBER_OF_PILES + 1) * incrX) / 2) + gap;
+        int top = gap;
+        int tableauTop = top + cardHeight + 2 * gap;
+        int offsetY = Math.max(1, (int) Math.round(CardPile.TABLEAU_INCR_Y * scale));
+        model.setCardSize(cardWidth, cardHeight, offsetY, height);
+        hitIndex.setLayout(left, top, tableauTop, incrX, cardWidth, cardHeight, offsetY);
+
         // ... Set location of all piles in model
-        int x = TABLEAU_START_X; // Initial x position.
+        int x = left; // Initial x position.
         for (int pileNum = 0; pileNum < NUMBER_OF_PILES; pileNum++) {
             CardPile p;
             if (pileNum < 4) {
                 p = model.getFreeCellPile(pileNum);
-                p.setPosition(new Rectangle(x, FREE_CELL_TOP, Card.CARD_WIDTH, Card.CARD_HEIGHT));
+                p.setPosition(new Rectangle(x, top, cardWidth, cardHeight));
                 p = model.getFoundationPile(pileNum);
-                p.setPosition(new Rectangle(x + (TABLEAU_INCR_X * 5), FOUNDATION_TOP, Card.CARD_WIDTH, Card.CARD_HEIGHT));
-            } else {
+                p.setPosition(new Rectangle(x + (incrX * 5), top, cardWidth, cardHeight));
             }
 
             p = model.getTableauPile(pileNum);
-            p.setPosition(new Rectangle(x + (TABLEAU_INCR_X / 2), TABLEAU_TOP, Card.CARD_WIDTH, 3 * Card.CARD_HEIGHT));
+            p.setPosition(new Rectangle(x + (incrX / 2), tableauTop, cardWidth, 3 * cardHeight));
 
-            x += TABLEAU_INCR_X;
+            x += incrX;
         }
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        // Foundations and free cells, then the tableau.
+        final Rectangle[] piles = new Rectangle[NUMBER_OF_PILES * 2];
+        for (int i = 0; i < piles.length; i++) {
+            piles[i] = model.getPile(i).getPosition();
+        }
+        final BoardLayout layout = new BoardLayout(width, height, gc, cardWidth, cardHeight, piles);
+        boardLayout = layout;
+        model.setLayout(layout);
+        repaint();
+
+        CardAtlas.getInstance().prepareSize(cardWidth, cardHeight, layout.getDeviceScale(), new Runnable() {
+            @Override
+            public void run() {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (boardLayout != layout) {
+                            return; // Placed again since, the images of the new size are on their way.
+                        }
+                        boardLayout = new BoardLayout(layout.getWidth(), layout.getHeight(),
+                            layout.getGraphicsConfiguration(), layout.getCardWidth(), layout.getCardHeight(), piles);
+                        model.setLayout(boardLayout);
+                        repaint();
+                    }
+                });
+            }
+        });
+    }
 
-        Timeline repaint = new SwingRepaintTimeline(this);
-        repaint.playLoop(RepeatBehavior.LOOP);
+    /**
+     * Switches to active rendering: a canvas covering the board is drawn by its own fixed-rate loop, and the
+     * repaints asked by cards and piles are no longer needed.
+     */
+    public void startActiveRendering() {
+        renderer = new ActiveRenderer(this);
+        renderer.addMouseListener(this);
+        renderer.addMouseMotionListener(this);
+        setLayout(new BorderLayout());
+        add(renderer, BorderLayout.CENTER);
+        model.setCanvas(null);
     }
 
     /** Draw the cards. */
     @Override
     public void paintComponent(Graphics g) {
-        // ... Paint background.
-        int width = getWidth();
-        int height = getHeight();
-        if (model.showBlackScreen) {
-            g.setColor(Color.BLACK);
-        } else {
-            g.setColor(BACKGROUND_COLOR);
+        if (renderer == null) {
+            paintBoard(g);
         }
-        g.fillRect(0, 0, width, height);// , because of the override
-        g.setColor(Color.BLACK); // Restore pen color.
+    }
 
-        if (!model.showBlackScreen) {
-            // ... Display each pile.
-            for (CardPile pile : model.getTableauPiles()) {
-                _drawPile(g, pile, false);
-            }
-            for (CardPile pile : model.getFreeCellPiles()) {
-                _drawPile(g, pile, true);
-            }
-            for (CardPile pile : model.getFoundationPiles()) {
-                _drawPile(g, pile, false);
-            }
+    /**
+     * Measures the allocations and time of every frame, see {@link FrameProbe}.
+     * 
+     * @param probe
+     */
+    void setFrameProbe(FrameProbe probe) {
+        this.probe = probe;
+    }
+
+    /**
+     * Draws the whole board, for Swing or the active renderer.
+     * 
+     * @param g
+     */
+    void paintBoard(Graphics g) {
+        if (probe == null) {
+            drawBoard(g);
+            return;
         }
-        if (model.showBlackScreen) {
-            if (volleys == null) {
-                prepareFireWork();
-            } else {
-                synchronized (volleys) {
-                    for (TimelineScenario scenario : volleyScenarios.values())
-                        scenario.resume();
-                }
-            }
-            
-            synchronized (volleys) {
-                for (VolleyExplosion exp : volleys)
-                    exp.paint(g);
-            }
+        probe.begin();
+        try {
+            drawBoard(g);
+        } finally {
+            probe.end();
+        }
+    }
+
+    private void drawBoard(Graphics g) {
+        // Read once, the model may change while this frame is painted.
+        BoardSnapshot board = model.getSnapshot();
+        BoardLayout layout = board.getLayout();
+        if (board.isBlackScreen()) {
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, layout.getWidth(), layout.getHeight());
         } else {
-            if (volleys != null) {
-                synchronized (volleys) {
-                    for (TimelineScenario scenario : volleyScenarios.values())
-                        scenario.suspend();
-                }
+            // ... Background and piles, from the cached layers.
+            layers.paint(g, board);
+        }
+        if (board.isBlackScreen()) {
+            if (!fireworks.isRunning()) {
+                startFireworks(layout);
             }
+            fireworks.update();
+            fireworks.paint(g);
+        } else if (fireworks.isRunning()) {
+            stopFireworks();
         }
 
         // ... Draw the dragged card, if any. Drawing at end So that it will on
         // top of all cards.
-        if (draggedCard != null) {
-            draggedFromPile.drawDragged(g, draggedCard);
-        }
-    }
-
-    private void _drawPile(Graphics g, CardPile pile, boolean topOnly) {
-        pile.draw(g);
-        if (pile.size() > 0) {
-            if (topOnly) {
-                Card card = pile.peekTop();
-                if (card != draggedCard) {
-                    // ... Draw only non-dragged card.
-                    card.draw(g);
-                }
-            } else {
-                // ... Draw all cards except dragged card.
-                for (Card card : pile) {
-                    if (card == draggedCard) {
-                        break;
-                    }
-                    card.draw(g);
-                }
-            }
-        }
+        layers.paintDragged(g, board);
     }
 
     public void mouseMoved(MouseEvent e) {
@@ -216,8 +312,10 @@ public class UICardPanel extends JComponent implements MouseListener, MouseMotio
         if (highlightedPile.isMovable(highlightedCard)) {
             draggedCard = highlightedCard;
             draggedFromPile = highlightedPile;
-            dragFromX = e.getX() - highlightedCard.getX();
-            dragFromY = e.getY() - highlightedCard.getY();
+            model.setDragged(draggedFromPile, draggedCard);
+            CardView view = model.getView(highlightedCard);
+            dragFromX = e.getX() - view.getX();
+            dragFromY = e.getY() - view.getY();
         }
     }
 
@@ -230,11 +328,11 @@ public class UICardPanel extends JComponent implements MouseListener, MouseMotio
 
         // ... Don't move the image off the screen sides
         newX = Math.max(newX, 0);
-        newX = Math.min(newX, getWidth() - Card.CARD_WIDTH);
+        newX = Math.min(newX, getWidth() - cardWidth);
 
         // ... Don't move the image off top or bottom
         newY = Math.max(newY, 0);
-        newY = Math.min(newY, getHeight() - Card.CARD_HEIGHT);
+        newY = Math.min(newY, getHeight() - cardHeight);
 
         draggedFromPile.setPosition(draggedCard, newX, newY);
     }
@@ -281,52 +379,35 @@ public class UICardPanel extends JComponent implements MouseListener, MouseMotio
         model.validate();
     }
 
+    /**
+     * Highlights the card under the mouse. The card is found from the layout, and nothing is repainted while it
+     * stays the same.
+     * 
+     * @param e
+     * @return true if there is a card under the mouse
+     */
     private boolean _findFocusCard(MouseEvent e) {
-        int x = e.getX(), y = e.getY();
-        if (highlightedCard != null && highlightedPile != null && highlightedPile.size() > 0) {
-            boolean isTopCard = highlightedCard.equals(highlightedPile.peekTop());
-            // Check if focus is in same card
-            if (highlightedCard.isVisibleInside(x, y, isTopCard)) {
-                highlightedCard.highlight(true);
-                return true; // Same card.
-            } else {
-                highlightedCard.highlight(false);
-                // Check if focus is in same pile
-                int x1 = highlightedCard.getX();
-                Rectangle loc = highlightedPile.getPosition();
-                if ((x >= x1 && x < x1 + Card.CARD_WIDTH) && (y >= loc.y && y < loc.height)) {
-                    if (_findInPile(highlightedPile, x, y))
-                        return true;
-                }
-            }
-        }
-        _clearHighlight();
-        // Check if focus is on any card.
-        for (CardPile pile : model) {
-            if (pile.isRemovable() && pile.size() > 0) {
-                if (_findInPile(pile, x, y))
-                    return true;
-            }
+        int hit = hitIndex.cardAt(e.getX(), e.getY());
+        if (hit == HitIndex.NONE) {
+            _clearHighlight();
+            return false;
         }
-        return false;
-    }
-
-    private boolean _findInPile(CardPile pile, int x, int y) {
-        Card topCard = pile.peekTop();
-        for (Card card : pile) {
-            if (card.isVisibleInside(x, y, card.equals(topCard))) {
-                highlightedPile = pile;
-                highlightedCard = card;
-                card.highlight(true);
-                return true;
-            }
+        CardPile pile = model.getPile(HitIndex.pileOf(hit));
+        Card card = pile.get(HitIndex.depthOf(hit));
+        CardView view = model.getView(card);
+        if (card == highlightedCard && pile == highlightedPile && view.isHighlighted()) {
+            return true; // Same card.
         }
-        return false;
+        _clearHighlight();
+        highlightedPile = pile;
+        highlightedCard = card;
+        view.highlight(true);
+        return true;
     }
 
     private void _clearHighlight() {
         if (highlightedCard != null) {
-            highlightedCard.highlight(false);
+            model.getView(highlightedCard).highlight(false);
         }
         highlightedCard = null;
         highlightedPile = null;
@@ -335,15 +416,12 @@ public class UICardPanel extends JComponent implements MouseListener, MouseMotio
     private void _clearDrag() {
         draggedCard = null;
         draggedFromPile = null;
+        model.setDragged(null, null);
     }
 
     private CardPile _findPileAt(int x, int y) {
-        for (CardPile pile : model) {
-            if (pile.getPosition().contains(x, y)) {
-                return pile;
-            }
-        }
-        return null;
+        int index = hitIndex.pileAt(x, y);
+        return index != HitIndex.NONE ? model.getPile(index) : null;
     }
 
     // Ignore other mouse events.
@@ -355,58 +433,24 @@ public class UICardPanel extends JComponent implements MouseListener, MouseMotio
 
 
 
-    private void prepareFireWork() {
-        this.volleys = new HashSet<VolleyExplosion>();
-        this.volleyScenarios = new HashMap<VolleyExplosion, TimelineScenario>();
-
-        Timeline repaint = new SwingRepaintTimeline(this);
-        repaint.playLoop(RepeatBehavior.LOOP);
-
-        new Thread() {
-            @Override
-            public void run() {
-                while (true) {
-                    addExplosions(10);
-                }
-            }
-        }.start();
-    }
-
-    private void addExplosions(int count) {
-        final CountDownLatch latch = new CountDownLatch(count);
-
-        Random randomizer = new Random();
-        for (int i = 0; i < count; i++) {
-            int r = randomizer.nextInt(255);
-            int g = 100 + randomizer.nextInt(155);
-            int b = 50 + randomizer.nextInt(205);
-            Color color = new Color(r, g, b);
-
-            int x = 60 + randomizer.nextInt(getWidth() - 120);
-            int y = 60 + randomizer.nextInt(getHeight() - 120);
-            final VolleyExplosion exp = new VolleyExplosion(x, y, color);
-
-            synchronized (volleys) {
-                volleys.add(exp);
-                TimelineScenario scenario = exp.getExplosionScenario();
-                scenario.addCallback(new TimelineScenarioCallback() {
-                    @Override
-                    public void onTimelineScenarioDone() {
-                        synchronized (volleys) {
-                            volleys.remove(exp);
-                            volleyScenarios.remove(exp);
-                            latch.countDown();
-                        }
-                    }
-                });
-                volleyScenarios.put(exp, scenario);
-                scenario.play();
-            }
+    /**
+     * Starts the fireworks of the victory screen. In Swing mode the whole board is repainted while they play.
+     * 
+     * @param layout
+     *            board they fill
+     */
+    private void startFireworks(BoardLayout layout) {
+        fireworks.start(layout.getWidth(), layout.getHeight(), (float) layout.getCardWidth() / Card.CARD_WIDTH);
+        if (renderer == null) {
+            AnimationClock.getInstance().loop(fireworkRepaint);
         }
+    }
 
-        try {
-            latch.await();
-        } catch (Exception exc) {
-        }
+    /**
+     * Stops the fireworks when the victory screen is left; nothing runs for them afterwards.
+     */
+    private void stopFireworks() {
+        fireworks.stop();
+        AnimationClock.getInstance().cancel(fireworkRepaint, Animated.FRAME);
     }
 }
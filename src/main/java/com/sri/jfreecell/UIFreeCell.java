@@ -5,26 +5,31 @@ import static com.sri.jfreecell.event.MenuActionListener.MenuAction.EXIT;
 import static com.sri.jfreecell.event.MenuActionListener.MenuAction.HELP;
 import static com.sri.jfreecell.event.MenuActionListener.MenuAction.HINT;
 import static com.sri.jfreecell.event.MenuActionListener.MenuAction.NEW;
+import static com.sri.jfreecell.event.MenuActionListener.MenuAction.PACK;
 import static com.sri.jfreecell.event.MenuActionListener.MenuAction.RESTART;
 import static com.sri.jfreecell.event.MenuActionListener.MenuAction.SELECT;
 import static com.sri.jfreecell.event.MenuActionListener.MenuAction.UNDO;
-import static com.sri.jfreecell.util.FileUtil.STATE_FILE;
+import static com.sri.jfreecell.event.MenuActionListener.MenuAction.REDO;
+import static com.sri.jfreecell.event.MenuActionListener.MenuAction.SEEK;
 import static com.sri.jfreecell.util.FileUtil.*;
-import static com.sri.jfreecell.util.FileUtil.saveObjecttoFile;
 import static java.awt.event.ActionEvent.ALT_MASK;
 import static java.awt.event.ActionEvent.CTRL_MASK;
 import static java.awt.event.KeyEvent.VK_A;
+import static java.awt.event.KeyEvent.VK_F;
 import static java.awt.event.KeyEvent.VK_F1;
 import static java.awt.event.KeyEvent.VK_F2;
 import static java.awt.event.KeyEvent.VK_F3;
 import static java.awt.event.KeyEvent.VK_G;
 import static java.awt.event.KeyEvent.VK_H;
+import static java.awt.event.KeyEvent.VK_I;
 import static java.awt.event.KeyEvent.VK_J;
 import static java.awt.event.KeyEvent.VK_N;
+import static java.awt.event.KeyEvent.VK_P;
 import static java.awt.event.KeyEvent.VK_R;
 import static java.awt.event.KeyEvent.VK_S;
 import static java.awt.event.KeyEvent.VK_U;
 import static java.awt.event.KeyEvent.VK_X;
+import static java.awt.event.KeyEvent.VK_Y;
 import static java.awt.event.KeyEvent.VK_Z;
 import static javax.swing.JOptionPane.ERROR_MESSAGE;
 import static javax.swing.JOptionPane.PLAIN_MESSAGE;
@@ -32,30 +37,46 @@ import static javax.swing.JOptionPane.showInputDialog;
 import static javax.swing.JOptionPane.showMessageDialog;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.FlowLayout;
+import java.awt.Graphics;
 import java.awt.GridLayout;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.BindException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javax.swing.ImageIcon;
+import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
 import javax.swing.KeyStroke;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.UIManager;
 
+import com.sri.jfreecell.engine.SavedGame;
 import com.sri.jfreecell.event.GameEvents;
 import com.sri.jfreecell.event.GameListenerImpl;
 import com.sri.jfreecell.event.MenuActionListener;
+import com.sri.jfreecell.legacy.LegacyState;
+import com.sri.jfreecell.solver.BatchSolver;
 import com.sri.jfreecell.util.ImageUtil;
 
 /**
@@ -77,14 +98,40 @@ public class UIFreeCell extends JFrame {
     public static final String version = "5.2.10";
 
     private UICardPanel boardDisplay;
+    private JComponent placeholder;
+    private JPanel content;
+    private JMenu gameMenu;
     private JLabel cardCount;
     private JLabel numeroJogadas;
 
     private static final int PORT = 6789;
     private static ServerSocket socket;
+    private static boolean activeRendering;
+    private static boolean frameProbe;
 
     public static void main(String[] args) {
+        if (args.length > 0 && BatchSolver.OPTION.equals(args[0])) {
+            BatchSolver.main(args);
+            return;
+        }
         checkIfRunning();
+        activeRendering = Arrays.asList(args).contains(ActiveRenderer.OPTION);
+        frameProbe = Arrays.asList(args).contains(FrameProbe.OPTION);
+        if (activeRendering) {
+            // Menus must not open behind the canvas.
+            JPopupMenu.setDefaultLightWeightPopupEnabled(false);
+        }
+        // Images, saved game and deal load in parallel while the window shows up.
+        CardAtlas.preload();
+        final FutureTask<GameModel> loader = new FutureTask<GameModel>(new Callable<GameModel>() {
+            @Override
+            public GameModel call() {
+                return loadGame();
+            }
+        });
+        Thread thread = new Thread(loader, "game-loader");
+        thread.setDaemon(true);
+        thread.start();
         try {
            // UIManager.setLookAndFeel("com.sun.java.swing.plaf.windows.WindowsLookAndFeel");
         } catch (Exception e) {
@@ -93,15 +140,35 @@ public class UIFreeCell extends JFrame {
 
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
-                new UIFreeCell();
+                new UIFreeCell(loader);
             }
         });
     }
 
-    public UIFreeCell() {
-        checkAndLoadGame();
-        boardDisplay = new UICardPanel(model);
-        model.addGameListener(new GameListenerImpl(this));
+    /**
+     * Shows the window with a placeholder board, replaced by the game once it and the card images are loaded.
+     * 
+     * @param loader
+     *            game being loaded
+     */
+    public UIFreeCell(final Future<GameModel> loader) {
+        placeholder = new JLabel("Carregando...", SwingConstants.CENTER) {
+            private static final long serialVersionUID = 1L;
+            private boolean painted;
+
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                if (!painted) {
+                    painted = true;
+                    logStartup("first paint");
+                }
+            }
+        };
+        placeholder.setOpaque(true);
+        placeholder.setBackground(UICardPanel.BACKGROUND_COLOR);
+        placeholder.setForeground(Color.WHITE);
+        placeholder.setPreferredSize(UICardPanel.getInitialSize());
 
         numeroJogadas = new JLabel("0", SwingConstants.LEFT);
         cardCount = new JLabel("52 ", SwingConstants.RIGHT);
@@ -111,17 +178,21 @@ public class UIFreeCell extends JFrame {
         controlPanel.add(new JLabel("| Nmero Jogadas:"));
         controlPanel.add(numeroJogadas);
 
-        JPanel content = new JPanel();
+        content = new JPanel();
         content.setLayout(new BorderLayout());
         content.add(controlPanel, BorderLayout.SOUTH);
-        content.add(boardDisplay, BorderLayout.CENTER);
+        content.add(placeholder, BorderLayout.CENTER);
 
         setContentPane(content);
         setJMenuBar(createMenu());
-        setTitle("FreeCell #" + model.gameNo);
+        gameMenu.setEnabled(false);
+        setTitle("FreeCell");
         this.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
+                if (model == null) {
+                    System.exit(0);
+                }
                 exit(model.getState().equals(GameEvents.COMPLETE));
                 e.getWindow().dispose();
             }
@@ -129,9 +200,57 @@ public class UIFreeCell extends JFrame {
         setIconImage(icon.getImage());
         pack();
         setLocationRelativeTo(null);
-        setResizable(false);
+        setResizable(true);
         setVisible(true);
-        this.model.notifyChanges();
+
+        new SwingWorker<GameModel, Void>() {
+            @Override
+            protected GameModel doInBackground() throws Exception {
+                CardAtlas.getInstance();
+                return loader.get();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    showGame(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    showMessageDialog(UIFreeCell.this, "Erro ao carregar o jogo.", "Alerta", ERROR_MESSAGE);
+                    System.exit(2);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Replaces the placeholder by the board of the loaded game.
+     * 
+     * @param model
+     */
+    private void showGame(GameModel model) {
+        this.model = model;
+        boardDisplay = new UICardPanel(model);
+        if (frameProbe) {
+            boardDisplay.setFrameProbe(new FrameProbe());
+        }
+        if (activeRendering) {
+            boardDisplay.startActiveRendering();
+        }
+        model.addGameListener(new GameListenerImpl(this));
+        content.remove(placeholder);
+        content.add(boardDisplay, BorderLayout.CENTER);
+        content.revalidate();
+        placeholder = null;
+        gameMenu.setEnabled(true);
+        updateTitle();
+        model.notifyChanges();
+        logStartup("board ready");
+    }
+
+    private static void logStartup(String step) {
+        long millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println("Startup: " + step + " after " + millis + " ms");
     }
 
     private JMenuBar createMenu() {
@@ -139,12 +258,16 @@ public class UIFreeCell extends JFrame {
         JMenu menu = new JMenu("Jogo");
         menu.setMnemonic(VK_G);
         menuBar.add(menu);
+        gameMenu = menu;
 
         createMenuItem(menu, NEW, VK_N, VK_F2, 0);
         createMenuItem(menu, SELECT, VK_S, VK_F3, 0);
+        createMenuItem(menu, PACK, VK_P, 0, 0);
         createMenuItem(menu, RESTART, VK_R, VK_R, CTRL_MASK);
         menu.addSeparator();
         createMenuItem(menu, UNDO, VK_U, VK_Z, CTRL_MASK);
+        createMenuItem(menu, REDO, VK_F, VK_Y, CTRL_MASK);
+        createMenuItem(menu, SEEK, VK_I, VK_G, CTRL_MASK);
         createMenuItem(menu, HINT, VK_H, VK_H, 0);
         menu.addSeparator();
         createMenuItem(menu, EXIT, VK_X, VK_X, ALT_MASK);
@@ -179,30 +302,81 @@ public class UIFreeCell extends JFrame {
 
     public void loadRandGame() {
         model.loadRandGame();
-        setTitle("FreeCell #" + model.gameNo);
+        updateTitle();
+    }
+
+    private void updateTitle() {
+        DealPack pack = model.getDealPack();
+        setTitle("FreeCell " + (pack != null ? pack.getName() + " " : "") + "#" + model.gameNo);
     }
 
     /**
      * Shows window to select game.
      */
     public void selectGame() {
-        int gameNo = 1;
-        JLabel bLabel = new JLabel("Selecione um numero entre 1 e 32000");
+        long gameNo = 1;
+        JLabel bLabel = new JLabel("Selecione um numero entre 1 e " + model.getMaxGameNo());
         JPanel panel = new JPanel(new GridLayout(2, 1));
         panel.add(bLabel);
         String userInput = showInputDialog(this, panel, "Identificador do jogo", PLAIN_MESSAGE);
         if (userInput == null)
             return;
         try {
-            gameNo = Integer.parseInt(userInput);
-            if (gameNo < 1 || gameNo > 32000)
+            gameNo = Long.parseLong(userInput.trim());
+            if (gameNo < 1 || gameNo > model.getMaxGameNo())
                 throw new Exception();
         } catch (Exception e) {
             showMessageDialog(this, "Numero invlido, Tente outro.");
             return;
         }
-        setTitle("FreeCell #" + gameNo);
         model.loadGame(gameNo);
+        updateTitle();
+    }
+
+    /**
+     * Shows window to jump to a move of the game history.
+     */
+    public void selectMove() {
+        int moveCount = model.getMoveCount();
+        String userInput = showInputDialog(this, "Selecione um movimento entre 0 e " + moveCount,
+            String.valueOf(model.getMoveNo()));
+        if (userInput == null)
+            return;
+        int move;
+        try {
+            move = Integer.parseInt(userInput.trim());
+            if (move < 0 || move > moveCount)
+                throw new Exception();
+        } catch (Exception e) {
+            showMessageDialog(this, "Numero invlido, Tente outro.");
+            return;
+        }
+        model.seekMove(move);
+    }
+
+    /**
+     * Shows window to select the deal pack used by new games.
+     */
+    public void selectDealPack() {
+        List<File> files = DealPack.listPacks();
+        Object[] options = new Object[files.size() + 1];
+        options[0] = "Microsoft FreeCell";
+        for (int i = 0; i < files.size(); i++) {
+            options[i + 1] = files.get(i).getName();
+        }
+        DealPack current = model.getDealPack();
+        Object selected = showInputDialog(this, "Pacotes em " + DealPack.getPackDirectory(), "Pacote de jogos",
+            PLAIN_MESSAGE, null, options, current != null ? current.getFile().getName() : options[0]);
+        if (selected == null)
+            return;
+        int idx = Arrays.asList(options).indexOf(selected);
+        try {
+            model.setDealPack(idx > 0 ? DealPack.open(files.get(idx - 1)) : null);
+        } catch (IOException e) {
+            showMessageDialog(this, "Pacote inv�lido: " + selected, "Alerta", ERROR_MESSAGE);
+            return;
+        }
+        loadRandGame();
     }
 
     /**
@@ -253,20 +427,58 @@ public class UIFreeCell extends JFrame {
         }
     }
 
-    private void checkAndLoadGame() {
-        GameModel model = (GameModel) getObjectfromFile(STATE_FILE);
-        if (model != null) {
-            this.model = model;
+    /**
+     * Loads the game to resume, or deals a new one. Runs in background at startup.
+     * 
+     * @return model
+     */
+    private static GameModel loadGame() {
+        File journal = new File(getAppDirectory(), JOURNAL_FILE);
+        File save = new File(getAppDirectory(), SAVE_FILE);
+        File legacy = new File(getAppDirectory(), STATE_FILE);
+        GameModel model = new GameModel();
+        // A save file is only left by a clean exit, and also has the counters
+        boolean restored = save.exists() && restoreGame(model, save, false);
+        if (!restored && journal.exists()) {
+            // Not closed cleanly, the journal has the latest moves
+            model.replayJournal(journal);
+        } else if (!restored && legacy.exists()) {
+            // Game saved by an older version, migrated once
+            restoreGame(model, legacy, true);
             deleteFile(STATE_FILE);
-        } else {
-            this.model = new GameModel();
+        }
+        if (model.openJournal(journal)) {
+            // From now on the journal is ahead of the save file, which would resume a stale game after a crash.
+            save.delete();
+        }
+        return model;
+    }
+
+    private static boolean restoreGame(GameModel model, File file, boolean legacy) {
+        try {
+            model.restoreGame(legacy ? LegacyState.read(file) : SavedGame.read(file));
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("File not found or corrupted: " + file.getName());
+            return false;
         }
     }
 
     public void exit(boolean isGameComplete) {
-        if(!isGameComplete) {
-            saveObjecttoFile(model, STATE_FILE);
+        File save = new File(getAppDirectory(), SAVE_FILE);
+        if (isGameComplete) {
+            save.delete();
+        } else {
+            try {
+                model.saveGame(save);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.err.println("Unable to save file: " + save.getName());
+            }
         }
+        // The compacted journal is kept too: the game resumes from it if the save file is lost.
+        model.closeJournal(isGameComplete);
         System.exit(0);
     }
     
@@ -0,0 +1,482 @@
+package com.sri.jfreecell.engine;
+
+import static com.sri.jfreecell.engine.Moves.FREECELL;
+import static com.sri.jfreecell.engine.Moves.NO_OF_COLUMNS;
+import static com.sri.jfreecell.engine.Moves.NO_OF_FOUNDATIONS;
+import static com.sri.jfreecell.engine.Moves.NO_OF_FREECELLS;
+import static com.sri.jfreecell.engine.Moves.TABLEAU;
+
+import java.util.Arrays;
+
+/**
+ * Immutable, compact encoding of a game position.<br>
+ * Cards are ids from 0 to 51 (suit * 13 + rank, suits in clubs, diamonds, hearts, spades order, rank 0 for the ace).
+ * The position is a 64 byte array: the 4 free cells (-1 when empty), the 8 column heights and the tableau cards of all
+ * columns one after the other, bottom card first. Foundations are kept by suit as 4 bit counts in a single long.
+ * Applying a move only allocates the new state and its array.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public final class BoardState {
+
+    public static final int NO_OF_CARDS = 52;
+    public static final int NO_OF_RANKS = 13;
+    public static final byte EMPTY = -1;
+
+    private static final int HEIGHTS = NO_OF_FREECELLS;
+    private static final int CARDS = HEIGHTS + NO_OF_COLUMNS;
+    /** Size of the raw encoding, see {@link #toBytes()}. */
+    public static final int SIZE = CARDS + NO_OF_CARDS;
+
+    private final byte[] cells;
+    private final long foundation;
+
+    private BoardState(byte[] cells, long foundation) {
+        this.cells = cells;
+        this.foundation = foundation;
+    }
+
+    /**
+     * Creates a position.
+     *
+     * @param freeCells
+     *            card in each free cell, -1 when empty
+     * @param tableau
+     *            cards of each column, bottom card first
+     * @param foundations
+     *            no of cards on the foundation of each suit
+     * @return position
+     * @throws IllegalArgumentException
+     *             if the 52 cards are not all present exactly once
+     */
+    public static BoardState create(int[] freeCells, int[][] tableau, int[] foundations) {
+        if (freeCells.length != NO_OF_FREECELLS || tableau.length != NO_OF_COLUMNS
+            || foundations.length != NO_OF_FOUNDATIONS) {
+            throw new IllegalArgumentException("Invalid board size");
+        }
+        boolean[] seen = new boolean[NO_OF_CARDS];
+        byte[] cells = new byte[SIZE];
+        long foundation = 0;
+        for (int s = 0; s < NO_OF_FOUNDATIONS; s++) {
+            for (int r = 0; r < foundations[s]; r++) {
+                markSeen(seen, s * NO_OF_RANKS + r);
+            }
+            foundation |= ((long) foundations[s]) << (s * 4);
+        }
+        for (int i = 0; i < NO_OF_FREECELLS; i++) {
+            if (freeCells[i] != EMPTY) {
+                markSeen(seen, freeCells[i]);
+            }
+            cells[i] = (byte) freeCells[i];
+        }
+        int pos = CARDS;
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            cells[HEIGHTS + c] = (byte) tableau[c].length;
+            for (int card : tableau[c]) {
+                markSeen(seen, card);
+                cells[pos++] = (byte) card;
+            }
+        }
+        for (boolean b : seen) {
+            if (!b) {
+                throw new IllegalArgumentException("Missing cards");
+            }
+        }
+        return new BoardState(cells, foundation);
+    }
+
+    private static void markSeen(boolean[] seen, int card) {
+        if (card < 0 || card >= NO_OF_CARDS || seen[card]) {
+            throw new IllegalArgumentException("Invalid or duplicate card: " + card);
+        }
+        seen[card] = true;
+    }
+
+    /**
+     * Creates the initial position of a deal.
+     *
+     * @param cards
+     *            52 card ids in dealing order, dealt one per column from left to right
+     * @return position
+     */
+    public static BoardState deal(int[] cards) {
+        int[][] tableau = new int[NO_OF_COLUMNS][];
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            tableau[c] = new int[(cards.length - c + NO_OF_COLUMNS - 1) / NO_OF_COLUMNS];
+        }
+        for (int i = 0; i < cards.length; i++) {
+            tableau[i % NO_OF_COLUMNS][i / NO_OF_COLUMNS] = cards[i];
+        }
+        return create(new int[] { EMPTY, EMPTY, EMPTY, EMPTY }, tableau, new int[NO_OF_FOUNDATIONS]);
+    }
+
+    public static int rank(int card) {
+        return card % NO_OF_RANKS;
+    }
+
+    public static int suit(int card) {
+        return card / NO_OF_RANKS;
+    }
+
+    public static boolean isRed(int card) {
+        int suit = suit(card);
+        return suit == 1 || suit == 2;
+    }
+
+    /**
+     * Checks if a card can be placed on another one in the tableau.
+     *
+     * @param top
+     *            card already in the column
+     * @param card
+     *            card to place on it
+     * @return true if the card is one rank lower and of the opposite color
+     */
+    public static boolean canStack(int top, int card) {
+        return rank(top) == rank(card) + 1 && isRed(top) != isRed(card);
+    }
+
+    public int getFreeCell(int cell) {
+        return cells[cell];
+    }
+
+    public int getHeight(int column) {
+        return cells[HEIGHTS + column];
+    }
+
+    /**
+     * Gets a card of a column.
+     *
+     * @param column
+     * @param depth
+     *            0 for the bottom card
+     * @return card id
+     */
+    public int getCard(int column, int depth) {
+        return cells[columnStart(column) + depth];
+    }
+
+    /**
+     * Gets the top card of a column.
+     *
+     * @param column
+     * @return card id, or -1 if the column is empty
+     */
+    public int getTop(int column) {
+        int height = getHeight(column);
+        return height == 0 ? EMPTY : cells[columnStart(column) + height - 1];
+    }
+
+    /**
+     * Gets the no of cards on the foundation of a suit.
+     *
+     * @param suit
+     * @return no of cards, 0 to 13
+     */
+    public int getFoundation(int suit) {
+        return (int) (foundation >>> (suit * 4)) & 0xF;
+    }
+
+    /**
+     * Gets the packed foundation counts, 4 bits per suit.
+     *
+     * @return foundation counts
+     */
+    public long getFoundations() {
+        return foundation;
+    }
+
+    public int getCardsOnFoundation() {
+        int count = 0;
+        for (int s = 0; s < NO_OF_FOUNDATIONS; s++) {
+            count += getFoundation(s);
+        }
+        return count;
+    }
+
+    public boolean isSolved() {
+        return getCardsOnFoundation() == NO_OF_CARDS;
+    }
+
+    public int getEmptyFreeCells() {
+        int count = 0;
+        for (int i = 0; i < NO_OF_FREECELLS; i++) {
+            if (cells[i] == EMPTY) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getEmptyColumns() {
+        int count = 0;
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            if (cells[HEIGHTS + c] == 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the no of cards of the ordered run at the top of a column.
+     *
+     * @param column
+     * @return length of the run, 0 if the column is empty
+     */
+    public int getRunLength(int column) {
+        int height = getHeight(column);
+        if (height == 0) {
+            return 0;
+        }
+        int start = columnStart(column);
+        int run = 1;
+        while (run < height && canStack(cells[start + height - run - 1], cells[start + height - run])) {
+            run++;
+        }
+        return run;
+    }
+
+    private int columnStart(int column) {
+        int start = CARDS;
+        for (int c = 0; c < column; c++) {
+            start += cells[HEIGHTS + c];
+        }
+        return start;
+    }
+
+    /**
+     * Gets the card moved from a pile, i.e. the bottom card of the moved ones.
+     *
+     * @param move
+     * @return card id, or -1 if the source pile does not hold enough cards
+     */
+    public int getMovedCard(int move) {
+        int source = Moves.source(move);
+        int count = Moves.count(move);
+        if (Moves.isFreeCell(source)) {
+            return count == 1 ? cells[source - FREECELL] : EMPTY;
+        } else if (Moves.isTableau(source)) {
+            int column = source - TABLEAU;
+            int height = getHeight(column);
+            return count >= 1 && count <= height ? cells[columnStart(column) + height - count] : EMPTY;
+        } else {
+            int n = getFoundation(source);
+            return count == 1 && n > 0 ? source * NO_OF_RANKS + n - 1 : EMPTY;
+        }
+    }
+
+    /**
+     * Applies a move. Foundation piles of a move are indexed by suit. Game rules are not checked, only that the source
+     * holds the moved cards.
+     *
+     * @param move
+     *            see {@link Moves}
+     * @return new position
+     * @throws IllegalArgumentException
+     *             if the move cannot be applied
+     */
+    public BoardState apply(int move) {
+        int source = Moves.source(move);
+        int target = Moves.target(move);
+        int count = Moves.count(move);
+        int card = getMovedCard(move);
+        if (card == EMPTY || source == target || (!Moves.isTableau(target) && count != 1)) {
+            throw new IllegalArgumentException("Invalid move: " + Moves.toString(move));
+        }
+
+        long nextFoundation = foundation;
+        if (Moves.isFoundation(source)) {
+            nextFoundation -= 1L << (source * 4);
+        } else if (Moves.isFoundation(target)) {
+            if (rank(card) != getFoundation(suit(card)) || target != suit(card)) {
+                throw new IllegalArgumentException("Invalid move: " + Moves.toString(move));
+            }
+            nextFoundation += 1L << (target * 4);
+        }
+
+        byte[] next = new byte[SIZE];
+        System.arraycopy(cells, 0, next, 0, CARDS);
+        if (Moves.isFreeCell(source)) {
+            next[source - FREECELL] = EMPTY;
+        }
+        if (Moves.isFreeCell(target)) {
+            if (cells[target - FREECELL] != EMPTY) {
+                throw new IllegalArgumentException("Invalid move: " + Moves.toString(move));
+            }
+            next[target - FREECELL] = (byte) card;
+        }
+
+        int srcColumn = Moves.isTableau(source) ? source - TABLEAU : -1;
+        int dstColumn = Moves.isTableau(target) ? target - TABLEAU : -1;
+        int movedStart = srcColumn >= 0 ? columnStart(srcColumn) + getHeight(srcColumn) - count : -1;
+        int from = CARDS, to = CARDS;
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            int height = cells[HEIGHTS + c];
+            int kept = c == srcColumn ? height - count : height;
+            System.arraycopy(cells, from, next, to, kept);
+            next[HEIGHTS + c] = (byte) kept;
+            from += height;
+            to += kept;
+            if (c == dstColumn) {
+                if (movedStart >= 0) {
+                    System.arraycopy(cells, movedStart, next, to, count);
+                } else {
+                    next[to] = (byte) card;
+                }
+                to += count;
+                next[HEIGHTS + c] = (byte) (height + count);
+            }
+        }
+        return new BoardState(next, nextFoundation);
+    }
+
+    /**
+     * Finds the next card the game moves to the foundation on its own, following the game model auto complete rule: a
+     * card goes up when no card of the opposite color still on the board could need it, i.e. its rank is at most one
+     * above the lowest started foundation of the other color, or it is an ace or a deuce.
+     *
+     * @return move to the foundation, or -1 if there is none
+     */
+    public int nextAutoMove() {
+        int blk = -1, red = -1;
+        for (int s = 0; s < NO_OF_FOUNDATIONS; s++) {
+            int n = getFoundation(s);
+            if (n == 0) {
+                continue;
+            }
+            if (s == 1 || s == 2) {
+                red = red == -1 ? n - 1 : Math.min(red, n - 1);
+            } else {
+                blk = blk == -1 ? n - 1 : Math.min(blk, n - 1);
+            }
+        }
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            int card = getTop(c);
+            if (card != EMPTY && isAutoMovable(card, blk, red)) {
+                return Moves.encode(TABLEAU + c, suit(card), 1);
+            }
+        }
+        for (int i = 0; i < NO_OF_FREECELLS; i++) {
+            int card = cells[i];
+            if (card != EMPTY && isAutoMovable(card, blk, red)) {
+                return Moves.encode(FREECELL + i, suit(card), 1);
+            }
+        }
+        return -1;
+    }
+
+    private boolean isAutoMovable(int card, int blk, int red) {
+        int rank = rank(card);
+        if (rank != getFoundation(suit(card))) {
+            return false;
+        }
+        int min = (isRed(card) ? blk : red) + 1;
+        return rank <= min || rank <= 1;
+    }
+
+    /**
+     * Plays all automatic moves to the foundation.
+     *
+     * @return resulting position, this one if there was nothing to move
+     */
+    public BoardState autoplay() {
+        BoardState board = this;
+        int move;
+        while ((move = board.nextAutoMove()) != -1) {
+            board = board.apply(move);
+        }
+        return board;
+    }
+
+    /**
+     * Copies the raw encoding, see class documentation.
+     *
+     * @return 64 bytes
+     */
+    public byte[] toBytes() {
+        return cells.clone();
+    }
+
+    /**
+     * Restores a position from its raw encoding.
+     *
+     * @param bytes
+     *            see {@link #toBytes()}
+     * @param foundation
+     *            see {@link #getFoundations()}
+     * @return position
+     */
+    public static BoardState fromBytes(byte[] bytes, long foundation) {
+        if (bytes.length != SIZE) {
+            throw new IllegalArgumentException("Invalid board size");
+        }
+        int[] freeCells = new int[NO_OF_FREECELLS];
+        for (int i = 0; i < NO_OF_FREECELLS; i++) {
+            freeCells[i] = bytes[i];
+        }
+        int[][] tableau = new int[NO_OF_COLUMNS][];
+        int pos = CARDS;
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            int height = bytes[HEIGHTS + c];
+            if (height < 0 || pos + height > SIZE) {
+                throw new IllegalArgumentException("Invalid column height");
+            }
+            tableau[c] = new int[height];
+            for (int d = 0; d < height; d++) {
+                tableau[c][d] = bytes[pos++];
+            }
+        }
+        int[] foundations = new int[NO_OF_FOUNDATIONS];
+        for (int s = 0; s < NO_OF_FOUNDATIONS; s++) {
+            foundations[s] = (int) (foundation >>> (s * 4)) & 0xF;
+        }
+        return create(freeCells, tableau, foundations);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof BoardState)) {
+            return false;
+        }
+        BoardState other = (BoardState) obj;
+        return foundation == other.foundation && Arrays.equals(cells, other.cells);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(cells) + (int) (foundation ^ (foundation >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < NO_OF_FREECELLS; i++) {
+            appendCard(sb, cells[i]).append(' ');
+        }
+        sb.append("| ");
+        for (int s = 0; s < NO_OF_FOUNDATIONS; s++) {
+            int n = getFoundation(s);
+            appendCard(sb, n == 0 ? EMPTY : s * NO_OF_RANKS + n - 1).append(' ');
+        }
+        int pos = CARDS;
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            sb.append('\n');
+            for (int d = 0; d < cells[HEIGHTS + c]; d++) {
+                appendCard(sb, cells[pos++]).append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static StringBuilder appendCard(StringBuilder sb, int card) {
+        if (card == EMPTY) {
+            return sb.append("--");
+        }
+        return sb.append("A23456789TJQK".charAt(rank(card))).append("CDHS".charAt(suit(card)));
+    }
+}
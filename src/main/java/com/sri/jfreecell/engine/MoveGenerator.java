@@ -0,0 +1,286 @@
+package com.sri.jfreecell.engine;
+
+import static com.sri.jfreecell.engine.BoardState.EMPTY;
+import static com.sri.jfreecell.engine.BoardState.NO_OF_CARDS;
+import static com.sri.jfreecell.engine.BoardState.canStack;
+import static com.sri.jfreecell.engine.BoardState.rank;
+import static com.sri.jfreecell.engine.BoardState.suit;
+import static com.sri.jfreecell.engine.Moves.FREECELL;
+import static com.sri.jfreecell.engine.Moves.NO_OF_COLUMNS;
+import static com.sri.jfreecell.engine.Moves.NO_OF_FOUNDATIONS;
+import static com.sri.jfreecell.engine.Moves.NO_OF_FREECELLS;
+import static com.sri.jfreecell.engine.Moves.TABLEAU;
+
+/**
+ * Legal move generator over an incrementally maintained position.<br>
+ * Like {@link PositionHash}, it follows each card placed on or removed from a pile, keeping the empty free cell and
+ * column counters and, for each column, the length of the ordered run ending at each card. Generating moves then only
+ * reads those, and writes them into a buffer of the caller without allocating.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public final class MoveGenerator {
+
+    /** Buffer size large enough for the moves of any position. */
+    public static final int MAX_MOVES = 256;
+
+    private final int[] cells = new int[NO_OF_FREECELLS];
+    private final int[] foundations = new int[NO_OF_FOUNDATIONS];
+    private final int[] heights = new int[NO_OF_COLUMNS];
+    private final byte[] cards = new byte[NO_OF_COLUMNS * NO_OF_CARDS];
+    private final byte[] runs = new byte[NO_OF_COLUMNS * NO_OF_CARDS];
+    private int emptyCells;
+    private int emptyColumns;
+
+    /**
+     * Starts from the given position.
+     *
+     * @param board
+     */
+    public void reset(BoardState board) {
+        emptyCells = 0;
+        emptyColumns = NO_OF_COLUMNS;
+        for (int i = 0; i < NO_OF_FREECELLS; i++) {
+            cells[i] = board.getFreeCell(i);
+            if (cells[i] == EMPTY) {
+                emptyCells++;
+            }
+        }
+        for (int s = 0; s < NO_OF_FOUNDATIONS; s++) {
+            foundations[s] = board.getFoundation(s);
+        }
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            heights[c] = 0;
+            int height = board.getHeight(c);
+            for (int d = 0; d < height; d++) {
+                add(TABLEAU + c, d, board.getCard(c, d));
+            }
+        }
+    }
+
+    /**
+     * Records a card placed on a pile.
+     *
+     * @param pile
+     *            pile index, see {@link Moves}
+     * @param depth
+     *            position of the card in the pile, 0 for the bottom card
+     * @param card
+     *            card id
+     */
+    public void add(int pile, int depth, int card) {
+        if (Moves.isFoundation(pile)) {
+            foundations[suit(card)] = depth + 1;
+        } else if (Moves.isFreeCell(pile)) {
+            cells[pile - FREECELL] = card;
+            emptyCells--;
+        } else {
+            int column = pile - TABLEAU;
+            int i = column * NO_OF_CARDS + depth;
+            cards[i] = (byte) card;
+            runs[i] = (byte) (depth > 0 && canStack(cards[i - 1], card) ? runs[i - 1] + 1 : 1);
+            if (depth == 0) {
+                emptyColumns--;
+            }
+            heights[column] = depth + 1;
+        }
+    }
+
+    /**
+     * Records a card removed from a pile.
+     *
+     * @param pile
+     *            pile index, see {@link Moves}
+     * @param depth
+     *            position the card had in the pile, 0 for the bottom card
+     * @param card
+     *            card id
+     */
+    public void remove(int pile, int depth, int card) {
+        if (Moves.isFoundation(pile)) {
+            foundations[suit(card)] = depth;
+        } else if (Moves.isFreeCell(pile)) {
+            cells[pile - FREECELL] = EMPTY;
+            emptyCells++;
+        } else {
+            int column = pile - TABLEAU;
+            if (depth == 0) {
+                emptyColumns++;
+            }
+            heights[column] = depth;
+        }
+    }
+
+    public int getEmptyFreeCells() {
+        return emptyCells;
+    }
+
+    public int getEmptyColumns() {
+        return emptyColumns;
+    }
+
+    /**
+     * Gets the no of cards of the ordered run at the top of a column.
+     *
+     * @param column
+     * @return length of the run, 0 if the column is empty
+     */
+    public int getRunLength(int column) {
+        int height = heights[column];
+        return height == 0 ? 0 : runs[column * NO_OF_CARDS + height - 1];
+    }
+
+    /**
+     * Gets the max no of cards that can be moved at once, see {@link Moves#maxMovable(int, int, boolean)}.
+     *
+     * @param toEmpty
+     *            moving to an empty column
+     * @return no of cards
+     */
+    public int getMaxMovable(boolean toEmpty) {
+        return Moves.maxMovable(emptyCells, emptyColumns, toEmpty);
+    }
+
+    private int top(int column) {
+        int height = heights[column];
+        return height == 0 ? EMPTY : cards[column * NO_OF_CARDS + height - 1];
+    }
+
+    /**
+     * Checks if any move is left.
+     *
+     * @return true if there is a legal move
+     */
+    public boolean hasMoves() {
+        if (emptyCells > 0 && emptyColumns < NO_OF_COLUMNS) {
+            return true;
+        }
+        for (int i = 0; i < NO_OF_FREECELLS; i++) {
+            int card = cells[i];
+            if (card != EMPTY && (emptyColumns > 0 || foundations[suit(card)] == rank(card) || canStackOnAny(card))) {
+                return true;
+            }
+        }
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            int card = top(c);
+            if (card == EMPTY) {
+                continue;
+            }
+            if ((emptyColumns > 0 && heights[c] > 1) || foundations[suit(card)] == rank(card)) {
+                return true;
+            }
+            // The top card alone can always move if it has a place.
+            if (canStackOnAny(card)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean canStackOnAny(int card) {
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            int top = top(c);
+            if (top != EMPTY && canStack(top, card)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Generates the legal moves, supermoves included. Moves to free cells and empty columns only target the first
+     * empty one, the others being equivalent; a whole column is not moved to an empty one.
+     *
+     * @param moves
+     *            destination buffer, at least {@link #MAX_MOVES} long
+     * @return no of moves
+     */
+    public int generate(int[] moves) {
+        int n = 0;
+        int firstFreeCell = -1, firstEmptyColumn = -1;
+        for (int i = NO_OF_FREECELLS - 1; i >= 0; i--) {
+            if (cells[i] == EMPTY) {
+                firstFreeCell = i;
+            }
+        }
+        for (int c = NO_OF_COLUMNS - 1; c >= 0; c--) {
+            if (heights[c] == 0) {
+                firstEmptyColumn = c;
+            }
+        }
+
+        // To the foundation.
+        for (int i = 0; i < NO_OF_FREECELLS; i++) {
+            int card = cells[i];
+            if (card != EMPTY && foundations[suit(card)] == rank(card)) {
+                moves[n++] = Moves.encode(FREECELL + i, suit(card), 1);
+            }
+        }
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            int card = top(c);
+            if (card != EMPTY && foundations[suit(card)] == rank(card)) {
+                moves[n++] = Moves.encode(TABLEAU + c, suit(card), 1);
+            }
+        }
+
+        // Free cells to the tableau.
+        for (int i = 0; i < NO_OF_FREECELLS; i++) {
+            int card = cells[i];
+            if (card == EMPTY) {
+                continue;
+            }
+            for (int c = 0; c < NO_OF_COLUMNS; c++) {
+                int top = top(c);
+                if ((top != EMPTY && canStack(top, card)) || c == firstEmptyColumn) {
+                    moves[n++] = Moves.encode(FREECELL + i, TABLEAU + c, 1);
+                }
+            }
+        }
+
+        // Tableau runs to the tableau.
+        int maxToCard = getMaxMovable(false);
+        int maxToEmpty = getMaxMovable(true);
+        for (int src = 0; src < NO_OF_COLUMNS; src++) {
+            int height = heights[src];
+            if (height == 0) {
+                continue;
+            }
+            int run = getRunLength(src);
+            int srcTop = top(src);
+            for (int dst = 0; dst < NO_OF_COLUMNS; dst++) {
+                if (dst == src) {
+                    continue;
+                }
+                int top = top(dst);
+                if (top == EMPTY) {
+                    if (dst != firstEmptyColumn) {
+                        continue;
+                    }
+                    for (int count = Math.min(run, maxToEmpty); count >= 1; count--) {
+                        if (count < height) {
+                            moves[n++] = Moves.encode(TABLEAU + src, TABLEAU + dst, count);
+                        }
+                    }
+                } else {
+                    // Only one card of the run can go on the top card.
+                    int count = rank(top) - rank(srcTop);
+                    if (count >= 1 && count <= run && count <= maxToCard
+                        && canStack(top, cards[src * NO_OF_CARDS + height - count])) {
+                        moves[n++] = Moves.encode(TABLEAU + src, TABLEAU + dst, count);
+                    }
+                }
+            }
+        }
+
+        // Tableau to a free cell.
+        if (firstFreeCell != -1) {
+            for (int c = 0; c < NO_OF_COLUMNS; c++) {
+                if (heights[c] > 0) {
+                    moves[n++] = Moves.encode(TABLEAU + c, FREECELL + firstFreeCell, 1);
+                }
+            }
+        }
+        return n;
+    }
+}
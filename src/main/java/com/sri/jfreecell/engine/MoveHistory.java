@@ -0,0 +1,163 @@
+package com.sri.jfreecell.engine;
+
+import java.util.ArrayList;
+
+/**
+ * Move history of a game, with undo, redo and seek.<br>
+ * Moves are kept in a {@link MoveLog} with a cursor: undone moves stay after the cursor until a new move replaces
+ * them. Every {@link #CHECKPOINT_INTERVAL} moves the position is stored, so seeking to any move starts from the
+ * nearest checkpoint before it and replays at most that many moves on a {@link BoardState}. Foundations of logged
+ * moves are numbered by suit, as in board states.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public final class MoveHistory {
+
+    public static final int CHECKPOINT_INTERVAL = 16;
+
+    private final MoveLog log = new MoveLog();
+    private final ArrayList<BoardState> checkpoints = new ArrayList<BoardState>();
+    private int position;
+
+    /**
+     * Starts a new history.
+     *
+     * @param start
+     *            position before the first move
+     */
+    public void reset(BoardState start) {
+        log.clear();
+        checkpoints.clear();
+        checkpoints.add(start);
+        position = 0;
+    }
+
+    /**
+     * Records a move made after the current one, dropping the undone moves.
+     *
+     * @param move
+     *            move, possibly flagged {@link Moves#AUTO}
+     */
+    public void push(int move) {
+        log.truncate(position);
+        int valid = position / CHECKPOINT_INTERVAL + 1;
+        while (checkpoints.size() > valid) {
+            checkpoints.remove(checkpoints.size() - 1);
+        }
+        log.push(move);
+        position++;
+        if (position % CHECKPOINT_INTERVAL == 0 && checkpoints.size() == position / CHECKPOINT_INTERVAL) {
+            BoardState board = checkpoints.get(checkpoints.size() - 1);
+            try {
+                for (int i = position - CHECKPOINT_INTERVAL; i < position; i++) {
+                    board = board.apply(log.get(i) & ~Moves.AUTO);
+                }
+                checkpoints.add(board);
+            } catch (IllegalArgumentException e) {
+                // Not replayable, seeking will go on from the previous checkpoint.
+            }
+        }
+    }
+
+    public boolean canUndo() {
+        return position > 0;
+    }
+
+    public boolean canRedo() {
+        return position < log.size();
+    }
+
+    /**
+     * Steps back over the current move.
+     *
+     * @return move to undo
+     */
+    public int undo() {
+        if (position == 0) {
+            throw new IllegalStateException("Nothing to undo");
+        }
+        return log.get(--position);
+    }
+
+    /**
+     * Steps forward over the next undone move.
+     *
+     * @return move to redo
+     */
+    public int redo() {
+        if (position == log.size()) {
+            throw new IllegalStateException("Nothing to redo");
+        }
+        return log.get(position++);
+    }
+
+    /**
+     * Gets the next undone move without redoing it.
+     *
+     * @return move, or -1 if there is none
+     */
+    public int peekRedo() {
+        return canRedo() ? log.get(position) : -1;
+    }
+
+    /**
+     * Gets the no of moves made, not counting undone ones.
+     *
+     * @return current move
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the no of moves made, counting undone ones.
+     *
+     * @return last move that can be reached
+     */
+    public int size() {
+        return log.size();
+    }
+
+    public int get(int index) {
+        return log.get(index);
+    }
+
+    /**
+     * Gets all moves, undone ones included.
+     *
+     * @return moves
+     */
+    public int[] toArray() {
+        return log.toArray();
+    }
+
+    /**
+     * Gets the position before the first move.
+     *
+     * @return start position
+     */
+    public BoardState getStart() {
+        return checkpoints.get(0);
+    }
+
+    /**
+     * Computes the position after a given move and makes it the current one. Later moves can still be redone.
+     *
+     * @param move
+     *            from 0 (start) to {@link #size()}
+     * @return position
+     */
+    public BoardState seek(int move) {
+        if (move < 0 || move > log.size()) {
+            throw new IndexOutOfBoundsException("Move: " + move + ", size: " + log.size());
+        }
+        int checkpoint = Math.min(move / CHECKPOINT_INTERVAL, checkpoints.size() - 1);
+        BoardState board = checkpoints.get(checkpoint);
+        for (int i = checkpoint * CHECKPOINT_INTERVAL; i < move; i++) {
+            board = board.apply(log.get(i) & ~Moves.AUTO);
+        }
+        position = move;
+        return board;
+    }
+}
@@ -0,0 +1,346 @@
+package com.sri.jfreecell.engine;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only journal of a game, so a crash loses no more than the last few milliseconds of play.<br>
+ * After a header (magic "FCJN", version), the file holds one start record (game number, deal pack, start position)
+ * followed by move, undo, redo and seek records, in the order they happened. Records are buffered and written by a
+ * background thread that forces them to disk every {@value #SYNC_MILLIS} ms, so the moves of that period share one
+ * fsync. A record cut by a crash ends the replay.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public final class MoveJournal implements Closeable {
+
+    private static final int MAGIC = 0x46434A4E; // FCJN
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte START = 1;
+    private static final byte MOVE = 2;
+    private static final byte UNDO = 3;
+    private static final byte REDO = 4;
+    private static final byte SEEK = 5;
+
+    private static final long SYNC_MILLIS = 50;
+
+    /**
+     * Receives the records of a journal being replayed.
+     */
+    public interface Listener {
+        void start(long gameNo, String dealPack, BoardState board);
+
+        void move(int move);
+
+        void undo();
+
+        void redo();
+
+        void seek(int move);
+    }
+
+    private final File file;
+    private FileChannel channel;
+    private final ByteBuffer pending = ByteBuffer.allocate(8192);
+    private boolean dirty;
+    private volatile boolean closed;
+    private final Thread syncThread;
+    /**
+     * Held while the channel is forced, and taken before the lock of the journal by whatever replaces or closes the
+     * channel, so it never goes away during a force. Records are still added meanwhile.
+     */
+    private final Object syncLock = new Object();
+
+    /**
+     * Opens a journal for writing. Its content is replaced by the next {@link #start} or {@link #rewrite}.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public MoveJournal(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        syncThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!closed) {
+                    try {
+                        Thread.sleep(SYNC_MILLIS);
+                        sync();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }, "journal");
+        syncThread.setDaemon(true);
+        syncThread.start();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Starts a new game, dropping the previous one.
+     *
+     * @param gameNo
+     * @param dealPack
+     *            deal pack path, or null
+     * @param board
+     *            position before the first move
+     */
+    public synchronized void start(long gameNo, String dealPack, BoardState board) {
+        try {
+            pending.clear();
+            channel.truncate(0);
+            channel.position(0);
+            // Written at once, the deal pack path can be longer than the pending buffer.
+            byte[] pack = toBytes(dealPack);
+            ByteBuffer record = ByteBuffer.allocate(startSize(pack));
+            writeHeader(record);
+            writeStart(record, gameNo, pack, board);
+            record.flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            dirty = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void move(int move) {
+        ensure(5);
+        pending.put(MOVE).putInt(move);
+    }
+
+    public synchronized void undo() {
+        ensure(1);
+        pending.put(UNDO);
+    }
+
+    public synchronized void redo() {
+        ensure(1);
+        pending.put(REDO);
+    }
+
+    public synchronized void seek(int move) {
+        ensure(5);
+        pending.put(SEEK).putInt(move);
+    }
+
+    private void ensure(int bytes) {
+        if (pending.remaining() < bytes) {
+            try {
+                write();
+            } catch (IOException e) {
+                e.printStackTrace();
+                pending.clear();
+            }
+        }
+    }
+
+    private void write() throws IOException {
+        pending.flip();
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+        pending.clear();
+        dirty = true;
+    }
+
+    /**
+     * Writes the pending records and forces them to disk.
+     *
+     * @throws IOException
+     */
+    public void sync() throws IOException {
+        synchronized (syncLock) {
+            FileChannel target;
+            synchronized (this) {
+                if (pending.position() > 0) {
+                    write();
+                }
+                if (!dirty) {
+                    return;
+                }
+                dirty = false;
+                target = channel;
+            }
+            // Outside the lock of the journal, moves keep being recorded while the disk catches up.
+            target.force(false);
+        }
+    }
+
+    /**
+     * Replaces the journal by the shortest one leading to the same game: start record, moves of the history and, if
+     * some moves are undone, a seek back. The new file is written aside and renamed over the old one.
+     *
+     * @param gameNo
+     * @param dealPack
+     *            deal pack path, or null
+     * @param start
+     *            position before the first move
+     * @param moves
+     *            all moves of the history, undone ones included
+     * @param position
+     *            no of moves not undone
+     * @throws IOException
+     */
+    public void rewrite(long gameNo, String dealPack, BoardState start, int[] moves, int position)
+        throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                rewriteFile(gameNo, dealPack, start, moves, position);
+            }
+        }
+    }
+
+    private void rewriteFile(long gameNo, String dealPack, BoardState start, int[] moves, int position)
+        throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            byte[] pack = toBytes(dealPack);
+            ByteBuffer buffer = ByteBuffer.allocate(startSize(pack) + (moves.length + 1) * 5);
+            writeHeader(buffer);
+            writeStart(buffer, gameNo, pack, start);
+            for (int move : moves) {
+                buffer.put(MOVE).putInt(move);
+            }
+            if (position < moves.length) {
+                buffer.put(SEEK).putInt(position);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        pending.clear();
+        channel.close();
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        dirty = false;
+    }
+
+    /**
+     * Stops the sync thread, then writes and forces the last records. The thread is not interrupted, as that would
+     * close the channel under a running force and lose the records.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            syncThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+        synchronized (syncLock) {
+            synchronized (this) {
+                channel.close();
+            }
+        }
+    }
+
+    private static void writeHeader(ByteBuffer buffer) {
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+    }
+
+    /**
+     * Encodes a deal pack path for the start record.
+     *
+     * @param dealPack
+     *            deal pack path, or null
+     * @return UTF-8 bytes, empty for null
+     * @throws IOException
+     *             if the path is longer than a record can hold
+     */
+    private static byte[] toBytes(String dealPack) throws IOException {
+        byte[] pack = (dealPack != null ? dealPack : "").getBytes(StandardCharsets.UTF_8);
+        if (pack.length > 0xFFFF) {
+            throw new IOException("Deal pack path too long for the journal: " + pack.length + " bytes");
+        }
+        return pack;
+    }
+
+    /**
+     * Gets the size of the header and start record.
+     */
+    private static int startSize(byte[] pack) {
+        return HEADER_SIZE + 1 + 8 + 2 + pack.length + BoardState.SIZE + 8;
+    }
+
+    private static void writeStart(ByteBuffer buffer, long gameNo, byte[] pack, BoardState board) {
+        buffer.put(START).putLong(gameNo).putShort((short) pack.length).put(pack);
+        buffer.put(board.toBytes()).putLong(board.getFoundations());
+    }
+
+    /**
+     * Replays a journal.
+     *
+     * @param file
+     * @param listener
+     *            receives the records
+     * @return true if a game was found
+     * @throws IOException
+     *             if the file can not be read or is not a journal
+     */
+    public static boolean replay(File file, Listener listener) throws IOException {
+        boolean started = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("Not a journal: " + file);
+            }
+            in.readShort();
+            while (true) {
+                int type = in.read();
+                if (type == START) {
+                    long gameNo = in.readLong();
+                    byte[] pack = new byte[in.readUnsignedShort()];
+                    in.readFully(pack);
+                    byte[] cells = new byte[BoardState.SIZE];
+                    in.readFully(cells);
+                    BoardState board = BoardState.fromBytes(cells, in.readLong());
+                    listener.start(gameNo, pack.length > 0 ? new String(pack, StandardCharsets.UTF_8) : null, board);
+                    started = true;
+                } else if (type == MOVE) {
+                    listener.move(in.readInt());
+                } else if (type == UNDO) {
+                    listener.undo();
+                } else if (type == REDO) {
+                    listener.redo();
+                } else if (type == SEEK) {
+                    listener.seek(in.readInt());
+                } else {
+                    break; // end of file, or garbage left by a crash
+                }
+            }
+        } catch (EOFException e) {
+            // Last record cut by a crash.
+        } catch (IllegalArgumentException e) {
+            System.err.println("Corrupted journal record: " + e.getMessage());
+        }
+        return started;
+    }
+}
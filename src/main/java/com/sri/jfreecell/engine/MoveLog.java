@@ -0,0 +1,88 @@
+package com.sri.jfreecell.engine;
+
+import java.util.Arrays;
+
+/**
+ * Growable log of moves encoded as ints, see {@link Moves}. A move history costs 4 bytes per move and no objects.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public final class MoveLog {
+
+    private int[] moves;
+    private int size;
+
+    public MoveLog() {
+        this(64);
+    }
+
+    public MoveLog(int capacity) {
+        moves = new int[Math.max(capacity, 1)];
+    }
+
+    public void push(int move) {
+        if (size == moves.length) {
+            moves = Arrays.copyOf(moves, size * 2);
+        }
+        moves[size++] = move;
+    }
+
+    /**
+     * Removes the last move.
+     *
+     * @return move
+     * @throws IllegalStateException
+     *             if the log is empty
+     */
+    public int pop() {
+        if (size == 0) {
+            throw new IllegalStateException("Empty move log");
+        }
+        return moves[--size];
+    }
+
+    /**
+     * Gets the last move.
+     *
+     * @return move, or -1 if the log is empty
+     */
+    public int peek() {
+        return size > 0 ? moves[size - 1] : -1;
+    }
+
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return moves[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Drops the moves after the given size.
+     *
+     * @param newSize
+     */
+    public void truncate(int newSize) {
+        if (newSize < 0 || newSize > size) {
+            throw new IndexOutOfBoundsException("Size: " + newSize + ", size: " + size);
+        }
+        size = newSize;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(moves, size);
+    }
+}
@@ -0,0 +1,124 @@
+package com.sri.jfreecell.engine;
+
+/**
+ * Encoding of moves as plain ints, shared by the board state, the move history and the solver.<br>
+ * Piles are numbered as in the game model: foundations 0-3, free cells 4-7 and tableau columns 8-15. A move packs the
+ * source pile in bits 0-3, the target pile in bits 4-7 and the no of cards in bits 8-13. In the move history, bit 14
+ * flags the automatic moves to the foundation that follow a player move.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public final class Moves {
+
+    public static final int FOUNDATION = 0;
+    public static final int FREECELL = 4;
+    public static final int TABLEAU = 8;
+    public static final int NO_OF_PILES = 16;
+
+    public static final int NO_OF_FOUNDATIONS = 4;
+    public static final int NO_OF_FREECELLS = 4;
+    public static final int NO_OF_COLUMNS = 8;
+
+    /** Flag of automatic moves, grouped with the player move before them. */
+    public static final int AUTO = 1 << 14;
+
+    private Moves() {
+    }
+
+    /**
+     * Encodes a move.
+     *
+     * @param source
+     *            source pile
+     * @param target
+     *            target pile
+     * @param count
+     *            no of cards moved
+     * @return move
+     */
+    public static int encode(int source, int target, int count) {
+        return source | (target << 4) | (count << 8);
+    }
+
+    public static int source(int move) {
+        return move & 0xF;
+    }
+
+    public static int target(int move) {
+        return (move >>> 4) & 0xF;
+    }
+
+    public static int count(int move) {
+        return (move >>> 8) & 0x3F;
+    }
+
+    public static boolean isAuto(int move) {
+        return (move & AUTO) != 0;
+    }
+
+    public static boolean isFoundation(int pile) {
+        return pile < FREECELL;
+    }
+
+    public static boolean isFreeCell(int pile) {
+        return pile >= FREECELL && pile < TABLEAU;
+    }
+
+    public static boolean isTableau(int pile) {
+        return pile >= TABLEAU;
+    }
+
+    /**
+     * Gets the no of cards that can be moved at once, following the game rules.
+     *
+     * @param freeCells
+     *            no of empty free cells
+     * @param emptyColumns
+     *            no of empty tableau columns
+     * @param toEmpty
+     *            true if the target is an empty column
+     * @return no of cards
+     */
+    public static int maxMovable(int freeCells, int emptyColumns, boolean toEmpty) {
+        int tCount = emptyColumns, fCount = freeCells;
+        if (tCount > 0) {
+            if (fCount > 0) {
+                fCount--;
+                tCount++;
+            }
+            if (toEmpty) {
+                tCount--;
+            }
+            tCount = ((tCount * (tCount + 1)) / 2);
+        }
+        return tCount + fCount + 1;
+    }
+
+    /**
+     * Readable form of a move, e.g. "T3>F2" for a card from the 3rd column to the 2nd free cell.
+     *
+     * @param move
+     * @return text
+     */
+    public static String toString(int move) {
+        StringBuilder sb = new StringBuilder();
+        appendPile(sb, source(move));
+        sb.append('>');
+        appendPile(sb, target(move));
+        if (count(move) > 1) {
+            sb.append('x').append(count(move));
+        }
+        return sb.toString();
+    }
+
+    private static void appendPile(StringBuilder sb, int pile) {
+        if (isFoundation(pile)) {
+            sb.append('H').append(pile - FOUNDATION + 1);
+        } else if (isFreeCell(pile)) {
+            sb.append('F').append(pile - FREECELL + 1);
+        } else {
+            sb.append('T').append(pile - TABLEAU + 1);
+        }
+    }
+}
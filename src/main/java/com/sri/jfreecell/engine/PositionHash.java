@@ -0,0 +1,129 @@
+package com.sri.jfreecell.engine;
+
+import static com.sri.jfreecell.engine.BoardState.EMPTY;
+import static com.sri.jfreecell.engine.Moves.FREECELL;
+import static com.sri.jfreecell.engine.Moves.NO_OF_COLUMNS;
+import static com.sri.jfreecell.engine.Moves.NO_OF_FOUNDATIONS;
+import static com.sri.jfreecell.engine.Moves.NO_OF_FREECELLS;
+import static com.sri.jfreecell.engine.Moves.TABLEAU;
+
+/**
+ * Incrementally maintained {@link Zobrist} hash and canonical key of a position. Each card placed on or removed from a
+ * pile updates both keys in constant time.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public final class PositionHash {
+
+    private long hash;
+    private long cells;
+    private long foundations;
+    private long columns;
+    private final long[] columnKeys = new long[NO_OF_COLUMNS];
+
+    /**
+     * Starts from the given position.
+     *
+     * @param board
+     */
+    public void reset(BoardState board) {
+        hash = 0;
+        cells = 0;
+        foundations = 0;
+        columns = 0;
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            columnKeys[c] = 0;
+        }
+        for (int i = 0; i < NO_OF_FREECELLS; i++) {
+            int card = board.getFreeCell(i);
+            if (card != EMPTY) {
+                toggle(FREECELL + i, 0, card);
+            }
+        }
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            int height = board.getHeight(c);
+            for (int d = 0; d < height; d++) {
+                toggle(TABLEAU + c, d, board.getCard(c, d));
+            }
+        }
+        for (int s = 0; s < NO_OF_FOUNDATIONS; s++) {
+            long key = Zobrist.foundation(s, board.getFoundation(s));
+            hash ^= key;
+            foundations ^= key;
+        }
+    }
+
+    /**
+     * Records a card placed on a pile.
+     *
+     * @param pile
+     *            pile index, see {@link Moves}
+     * @param depth
+     *            position of the card in the pile, 0 for the bottom card
+     * @param card
+     *            card id
+     */
+    public void add(int pile, int depth, int card) {
+        if (Moves.isFoundation(pile)) {
+            foundation(BoardState.suit(card), depth, depth + 1);
+        } else {
+            toggle(pile, depth, card);
+        }
+    }
+
+    /**
+     * Records a card removed from a pile.
+     *
+     * @param pile
+     *            pile index, see {@link Moves}
+     * @param depth
+     *            position the card had in the pile, 0 for the bottom card
+     * @param card
+     *            card id
+     */
+    public void remove(int pile, int depth, int card) {
+        if (Moves.isFoundation(pile)) {
+            foundation(BoardState.suit(card), depth + 1, depth);
+        } else {
+            toggle(pile, depth, card);
+        }
+    }
+
+    private void toggle(int pile, int depth, int card) {
+        if (Moves.isFreeCell(pile)) {
+            hash ^= Zobrist.cell(pile - FREECELL, card);
+            cells ^= Zobrist.ANY_CELL[card];
+        } else {
+            int column = pile - TABLEAU;
+            hash ^= Zobrist.tableau(column, depth, card);
+            columns -= Zobrist.mix(columnKeys[column]);
+            columnKeys[column] ^= Zobrist.depth(depth, card);
+            columns += Zobrist.mix(columnKeys[column]);
+        }
+    }
+
+    private void foundation(int suit, int oldCount, int newCount) {
+        long key = Zobrist.foundation(suit, oldCount) ^ Zobrist.foundation(suit, newCount);
+        hash ^= key;
+        foundations ^= key;
+    }
+
+    /**
+     * Gets the hash of the exact position.
+     *
+     * @return hash
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Gets the key of the position regardless of free cell and column order.
+     *
+     * @return canonical key
+     */
+    public long getCanonicalKey() {
+        return Zobrist.combine(columns, cells, foundations);
+    }
+}
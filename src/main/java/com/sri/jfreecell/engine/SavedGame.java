@@ -0,0 +1,188 @@
+package com.sri.jfreecell.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Game saved on exit, in a compact binary file.<br>
+ * After a header (magic "FCSG", version, flags), the file holds the game number and deal pack, the start position,
+ * the counters, the move history with its position, and the current position as a check. A game of 100 moves takes
+ * about 600 bytes. Readers of a version reject files of a later one; later versions must keep reading this one.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public final class SavedGame {
+
+    private static final int MAGIC = 0x46435347; // FCSG
+    private static final short VERSION = 1;
+    /** Sanity bound of the history length, against a corrupted count. */
+    private static final int MAX_MOVES = 1 << 20;
+
+    private final long gameNo;
+    private final String dealPack;
+    private final BoardState start;
+    private final int[] moves;
+    private final int position;
+    private final BoardState board;
+    private final int noOfPlays;
+    private final boolean autoComplete;
+
+    /**
+     * Creates a saved game.
+     *
+     * @param gameNo
+     * @param dealPack
+     *            deal pack path, or null
+     * @param start
+     *            position before the first move
+     * @param moves
+     *            all moves of the history, undone ones included
+     * @param position
+     *            no of moves not undone
+     * @param board
+     *            current position
+     * @param noOfPlays
+     *            play counter of the model
+     * @param autoComplete
+     */
+    public SavedGame(long gameNo, String dealPack, BoardState start, int[] moves, int position, BoardState board,
+        int noOfPlays, boolean autoComplete) {
+        if (position < 0 || position > moves.length) {
+            throw new IllegalArgumentException("Position out of history: " + position);
+        }
+        this.gameNo = gameNo;
+        this.dealPack = dealPack;
+        this.start = start;
+        this.moves = moves;
+        this.position = position;
+        this.board = board;
+        this.noOfPlays = noOfPlays;
+        this.autoComplete = autoComplete;
+    }
+
+    public long getGameNo() {
+        return gameNo;
+    }
+
+    public String getDealPack() {
+        return dealPack;
+    }
+
+    public BoardState getStart() {
+        return start;
+    }
+
+    public int[] getMoves() {
+        return moves;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public BoardState getBoard() {
+        return board;
+    }
+
+    public int getNoOfPlays() {
+        return noOfPlays;
+    }
+
+    public boolean isAutoComplete() {
+        return autoComplete;
+    }
+
+    /**
+     * Writes the game to a file. The file is replaced at once, a crash leaves the previous one.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeLong(gameNo);
+            byte[] pack = (dealPack != null ? dealPack : "").getBytes(StandardCharsets.UTF_8);
+            out.writeShort(pack.length);
+            out.write(pack);
+            writeBoard(out, start);
+            out.writeInt(noOfPlays);
+            out.writeBoolean(autoComplete);
+            out.writeInt(moves.length);
+            out.writeInt(position);
+            for (int move : moves) {
+                out.writeInt(move);
+            }
+            writeBoard(out, board);
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeBoard(DataOutputStream out, BoardState board) throws IOException {
+        out.write(board.toBytes());
+        out.writeLong(board.getFoundations());
+    }
+
+    /**
+     * Reads a game.
+     *
+     * @param file
+     * @return saved game
+     * @throws IOException
+     *             if the file can not be read, is not a saved game or is of a later version
+     */
+    public static SavedGame read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a saved game: " + file);
+            }
+            int version = in.readShort();
+            if (version > VERSION) {
+                throw new IOException("Saved game of a later version (" + version + "): " + file);
+            }
+            in.readShort();
+            long gameNo = in.readLong();
+            byte[] pack = new byte[in.readUnsignedShort()];
+            in.readFully(pack);
+            BoardState start = readBoard(in);
+            int noOfPlays = in.readInt();
+            boolean autoComplete = in.readBoolean();
+            int count = in.readInt();
+            int position = in.readInt();
+            if (count < 0 || count > MAX_MOVES) {
+                throw new IOException("Corrupted saved game: " + file);
+            }
+            int[] moves = new int[count];
+            for (int i = 0; i < count; i++) {
+                moves[i] = in.readInt();
+            }
+            BoardState board = readBoard(in);
+            return new SavedGame(gameNo, pack.length > 0 ? new String(pack, StandardCharsets.UTF_8) : null, start,
+                moves, position, board, noOfPlays, autoComplete);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupted saved game: " + file, e);
+        }
+    }
+
+    private static BoardState readBoard(DataInputStream in) throws IOException {
+        byte[] cells = new byte[BoardState.SIZE];
+        in.readFully(cells);
+        return BoardState.fromBytes(cells, in.readLong());
+    }
+}
@@ -0,0 +1,142 @@
+package com.sri.jfreecell.engine;
+
+import static com.sri.jfreecell.engine.BoardState.EMPTY;
+import static com.sri.jfreecell.engine.BoardState.NO_OF_CARDS;
+import static com.sri.jfreecell.engine.BoardState.NO_OF_RANKS;
+import static com.sri.jfreecell.engine.Moves.NO_OF_COLUMNS;
+import static com.sri.jfreecell.engine.Moves.NO_OF_FOUNDATIONS;
+import static com.sri.jfreecell.engine.Moves.NO_OF_FREECELLS;
+
+import java.util.Random;
+
+/**
+ * Zobrist keys of positions.<br>
+ * The hash identifies an exact position: every (column, depth, card), (free cell, card) and (suit, foundation count)
+ * has a random key and the hash is the xor of the keys present. The canonical key ignores the order of free cells and
+ * columns: each column gets a key from (depth, card) only, mixed so that cards can not be exchanged between columns,
+ * and column keys are added up, so any permutation of columns or free cells gives the same key.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public final class Zobrist {
+
+    /** Deepest supported tableau position. */
+    public static final int MAX_DEPTH = NO_OF_CARDS;
+
+    static final long[] TABLEAU = new long[NO_OF_COLUMNS * MAX_DEPTH * NO_OF_CARDS];
+    static final long[] DEPTH = new long[MAX_DEPTH * NO_OF_CARDS];
+    static final long[] CELL = new long[NO_OF_FREECELLS * NO_OF_CARDS];
+    static final long[] ANY_CELL = new long[NO_OF_CARDS];
+    static final long[] FOUNDATION = new long[NO_OF_FOUNDATIONS * (NO_OF_RANKS + 1)];
+
+    static {
+        // Fixed seed, so keys are stable across runs and can be stored.
+        Random random = new Random(0x5EED_F8EEC311L);
+        fill(random, TABLEAU);
+        fill(random, DEPTH);
+        fill(random, CELL);
+        fill(random, ANY_CELL);
+        fill(random, FOUNDATION);
+    }
+
+    private Zobrist() {
+    }
+
+    private static void fill(Random random, long[] keys) {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+    }
+
+    static long tableau(int column, int depth, int card) {
+        return TABLEAU[(column * MAX_DEPTH + depth) * NO_OF_CARDS + card];
+    }
+
+    static long depth(int depth, int card) {
+        return DEPTH[depth * NO_OF_CARDS + card];
+    }
+
+    static long cell(int cell, int card) {
+        return CELL[cell * NO_OF_CARDS + card];
+    }
+
+    static long foundation(int suit, int count) {
+        return FOUNDATION[suit * (NO_OF_RANKS + 1) + count];
+    }
+
+    /**
+     * Mixes a column key before it is added up with the others.
+     *
+     * @param key
+     * @return mixed key, 0 for an empty column
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Computes the hash of an exact position.
+     *
+     * @param board
+     * @return hash
+     */
+    public static long hash(BoardState board) {
+        long hash = 0;
+        for (int i = 0; i < NO_OF_FREECELLS; i++) {
+            int card = board.getFreeCell(i);
+            if (card != EMPTY) {
+                hash ^= cell(i, card);
+            }
+        }
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            int height = board.getHeight(c);
+            for (int d = 0; d < height; d++) {
+                hash ^= tableau(c, d, board.getCard(c, d));
+            }
+        }
+        for (int s = 0; s < NO_OF_FOUNDATIONS; s++) {
+            hash ^= foundation(s, board.getFoundation(s));
+        }
+        return hash;
+    }
+
+    /**
+     * Computes the key of a position, regardless of the order of its free cells and columns.
+     *
+     * @param board
+     * @return canonical key
+     */
+    public static long canonicalKey(BoardState board) {
+        long cells = 0;
+        for (int i = 0; i < NO_OF_FREECELLS; i++) {
+            int card = board.getFreeCell(i);
+            if (card != EMPTY) {
+                cells ^= ANY_CELL[card];
+            }
+        }
+        long columns = 0;
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            long column = 0;
+            int height = board.getHeight(c);
+            for (int d = 0; d < height; d++) {
+                column ^= depth(d, board.getCard(c, d));
+            }
+            columns += mix(column);
+        }
+        long foundations = 0;
+        for (int s = 0; s < NO_OF_FOUNDATIONS; s++) {
+            foundations ^= foundation(s, board.getFoundation(s));
+        }
+        return combine(columns, cells, foundations);
+    }
+
+    static long combine(long columns, long cells, long foundations) {
+        return columns ^ cells ^ foundations;
+    }
+}
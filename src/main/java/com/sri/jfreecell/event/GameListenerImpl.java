@@ -47,7 +47,6 @@ public class GameListenerImpl implements GameListener {
     private void onMove(GameEvent ge) {
         frame.updateCardCount((int) ge.getValue());
         frame.updateNumeroJogadas(ge.getNumeroJogadas());
-        frame.repaint();
     }
 
     private void gameComplete() {
@@ -84,7 +83,7 @@ public class GameListenerImpl implements GameListener {
                 frame.loadRandGame();
                 break;
             case 2:
-                frame.model.undoLastStep();
+                frame.model.undoMove();
                 break;
             default:
                 frame.loadRandGame();
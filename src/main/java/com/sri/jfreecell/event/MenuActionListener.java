@@ -5,8 +5,11 @@ import static com.sri.jfreecell.event.MenuActionListener.MenuAction.EXIT;
 import static com.sri.jfreecell.event.MenuActionListener.MenuAction.HINT;
 import static com.sri.jfreecell.event.MenuActionListener.MenuAction.SELECT;
 import static com.sri.jfreecell.event.MenuActionListener.MenuAction.NEW;
+import static com.sri.jfreecell.event.MenuActionListener.MenuAction.PACK;
 import static com.sri.jfreecell.event.MenuActionListener.MenuAction.RESTART;
 import static com.sri.jfreecell.event.MenuActionListener.MenuAction.UNDO;
+import static com.sri.jfreecell.event.MenuActionListener.MenuAction.REDO;
+import static com.sri.jfreecell.event.MenuActionListener.MenuAction.SEEK;
 import static com.sri.jfreecell.event.MenuActionListener.MenuAction.HELP;
 
 import java.awt.event.ActionEvent;
@@ -27,8 +30,11 @@ public class MenuActionListener implements ActionListener {
     public static class MenuAction {
         public static final String NEW = "Novo jogo";
         public static final String SELECT = "Selecione o jogo";
+        public static final String PACK = "Pacote de jogos";
         public static final String RESTART = "Resetar partida";
         public static final String UNDO = "Desfazer movimento";
+        public static final String REDO = "Refazer movimento";
+        public static final String SEEK = "Ir para o movimento";
         public static final String HINT = "Dica";
         public static final String HELP = "JFree Cell Ajuda";
         public static final String ABOUT = "Sobre";
@@ -44,10 +50,16 @@ public class MenuActionListener implements ActionListener {
 	    frame.loadRandGame();
 	} else if (evt.getActionCommand().equals(SELECT)) {
             frame.selectGame();
+        } else if (evt.getActionCommand().equals(PACK)) {
+            frame.selectDealPack();
         } else if (evt.getActionCommand().equals(RESTART)) {
             frame.model.restartGame();
         } else if (evt.getActionCommand().equals(UNDO)) {
 	    frame.model.undoMove();
+        } else if (evt.getActionCommand().equals(REDO)) {
+            frame.model.redoMove();
+        } else if (evt.getActionCommand().equals(SEEK)) {
+            frame.selectMove();
 	} else if (evt.getActionCommand().equals(HINT)) {
 	    frame.model.findHint();
 	} else if (evt.getActionCommand().equals(EXIT)) {
@@ -0,0 +1,237 @@
+package com.sri.jfreecell.firework;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RadialGradientPaint;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Fireworks of the victory screen, as a particle system.<br>
+ * All particles live in flat arrays (position, velocity, radius, opacity, color) and are moved in one pass per frame;
+ * a particle slows down with a constant drag and fades out over its life, then is dropped by moving the last one in
+ * its place. They are drawn from a sheet of glow images made at start for every color, opacity level and size class,
+ * each at its final size, so a frame is only unscaled blits.<br>
+ * Volleys are launched by waves: a new wave once all particles of the previous one are gone. The system does nothing
+ * between {@link #stop()} and the next {@link #start(int, int, float)}, and has no thread of its own: the board calls
+ * {@link #update()} and {@link #paint(Graphics)} for each frame it draws.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public class Fireworks {
+
+    private static final int VOLLEYS_PER_WAVE = 10;
+    /** Directions of a volley, each with a particle of every size. */
+    private static final int RAYS = 18;
+    private static final float[] SIZES = { 0.6f, 0.8f, 1.0f };
+    private static final int MAX_PARTICLES = VOLLEYS_PER_WAVE * RAYS * 3;
+
+    /** Velocity lost per second, as a rate: a particle covers 95% of its distance in 1.2 s. */
+    private static final float DRAG = 2.5f;
+    /** Longest frame taken into account, so a stalled frame does not make the particles jump. */
+    private static final float MAX_STEP = 0.05f;
+
+    private static final int NO_OF_COLORS = 8;
+    private static final int ALPHA_LEVELS = 12;
+    private static final int SIZE_CLASSES = 8;
+    /** Radius range of the particles at scale 1. */
+    private static final float MIN_RADIUS = 1.2f;
+    private static final float MAX_RADIUS = 4.0f;
+    /** Size of a glow image relative to the circle it shows. */
+    private static final float GLOW = 2.0f;
+
+    private final Random random = new Random();
+    private final float[] x = new float[MAX_PARTICLES];
+    private final float[] y = new float[MAX_PARTICLES];
+    private final float[] vx = new float[MAX_PARTICLES];
+    private final float[] vy = new float[MAX_PARTICLES];
+    private final float[] radius = new float[MAX_PARTICLES];
+    private final float[] alpha = new float[MAX_PARTICLES];
+    /** Opacity lost per second. */
+    private final float[] fade = new float[MAX_PARTICLES];
+    private final int[] color = new int[MAX_PARTICLES];
+    private int count;
+
+    /** Glow images, a row per color and opacity level, a column per size class. */
+    private BufferedImage sprites;
+    private int cell;
+    /** Radius of each size class, and largest radius drawn with it. */
+    private final float[] classRadius = new float[SIZE_CLASSES];
+    private final float[] classLimit = new float[SIZE_CLASSES];
+    private boolean running;
+    private long lastUpdate;
+    private int width;
+    private int height;
+    private float scale;
+
+    /**
+     * Starts the fireworks, with a new palette.
+     *
+     * @param width
+     *            width of the area
+     * @param height
+     *            height of the area
+     * @param scale
+     *            scale of the board, for the size of the volleys
+     */
+    public void start(int width, int height, float scale) {
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        createSprites();
+        count = 0;
+        lastUpdate = System.nanoTime();
+        running = true;
+    }
+
+    /**
+     * Stops the fireworks and drops all particles and images.
+     */
+    public void stop() {
+        running = false;
+        count = 0;
+        sprites = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Moves the particles by the time elapsed since the last update, launching a wave when none is left.
+     */
+    public void update() {
+        if (!running) {
+            return;
+        }
+        long now = System.nanoTime();
+        float dt = Math.min(MAX_STEP, (now - lastUpdate) / 1e9f);
+        lastUpdate = now;
+        if (count == 0) {
+            launchWave();
+        }
+        float damping = (float) Math.exp(-DRAG * dt);
+        int i = 0;
+        while (i < count) {
+            x[i] += vx[i] * dt;
+            y[i] += vy[i] * dt;
+            vx[i] *= damping;
+            vy[i] *= damping;
+            alpha[i] -= fade[i] * dt;
+            if (alpha[i] <= 0) {
+                remove(i);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Draws the particles.
+     *
+     * @param g
+     */
+    public void paint(Graphics g) {
+        if (!running) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int level = Math.min(ALPHA_LEVELS - 1, (int) (alpha[i] * ALPHA_LEVELS));
+            int k = 0;
+            while (k < SIZE_CLASSES - 1 && radius[i] > classLimit[k]) {
+                k++;
+            }
+            int sx = k * cell, sy = (color[i] * ALPHA_LEVELS + level) * cell;
+            int dx = (int) x[i] - cell / 2, dy = (int) y[i] - cell / 2;
+            g.drawImage(sprites, dx, dy, dx + cell, dy + cell, sx, sy, sx + cell, sy + cell, null);
+        }
+    }
+
+    private void launchWave() {
+        int margin = (int) (60 * scale);
+        for (int v = 0; v < VOLLEYS_PER_WAVE; v++) {
+            int cx = margin + random.nextInt(Math.max(1, width - 2 * margin));
+            int cy = margin + random.nextInt(Math.max(1, height - 2 * margin));
+            launchVolley(cx, cy, random.nextInt(NO_OF_COLORS));
+        }
+    }
+
+    private void launchVolley(float cx, float cy, int colorIndex) {
+        float duration = 1.0f + random.nextFloat();
+        for (int ray = 0; ray < RAYS; ray++) {
+            float dist = (100 + 10 * random.nextFloat()) * scale;
+            float size = (2 + 2 * random.nextFloat()) * scale;
+            for (float delta : SIZES) {
+                if (count == MAX_PARTICLES) {
+                    return;
+                }
+                double radians = 2.0 * Math.PI * (ray + random.nextFloat()) / RAYS;
+                float cos = (float) Math.cos(radians), sin = (float) Math.sin(radians);
+                // Starts at a tenth of its distance; the drag brings it to the rest.
+                float initDist = delta * dist / 10.0f;
+                float speed = (delta * dist - initDist) * DRAG;
+                int i = count++;
+                x[i] = cx + initDist * cos;
+                y[i] = cy + initDist * sin;
+                vx[i] = speed * cos;
+                vy[i] = speed * sin;
+                radius[i] = size * delta;
+                alpha[i] = 1.0f;
+                fade[i] = 1.0f / (duration - 0.2f + 0.4f * random.nextFloat());
+                color[i] = colorIndex;
+            }
+        }
+    }
+
+    private void remove(int i) {
+        int last = --count;
+        x[i] = x[last];
+        y[i] = y[last];
+        vx[i] = vx[last];
+        vy[i] = vy[last];
+        radius[i] = radius[last];
+        alpha[i] = alpha[last];
+        fade[i] = fade[last];
+        color[i] = color[last];
+    }
+
+    /**
+     * Draws the glow images: a solid disc of half the cell fading out to its edge, in a cell large enough for the
+     * largest class so every blit has the same size.
+     */
+    private void createSprites() {
+        float min = MIN_RADIUS * scale, max = MAX_RADIUS * scale;
+        for (int k = 0; k < SIZE_CLASSES; k++) {
+            classRadius[k] = (float) (min * Math.pow(max / min, k / (double) (SIZE_CLASSES - 1)));
+        }
+        for (int k = 0; k < SIZE_CLASSES - 1; k++) {
+            classLimit[k] = (classRadius[k] + classRadius[k + 1]) / 2;
+        }
+        classLimit[SIZE_CLASSES - 1] = Float.MAX_VALUE;
+        cell = (int) Math.ceil(2 * GLOW * max) + 1;
+
+        sprites = new BufferedImage(SIZE_CLASSES * cell, NO_OF_COLORS * ALPHA_LEVELS * cell,
+            BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2 = sprites.createGraphics();
+        for (int c = 0; c < NO_OF_COLORS; c++) {
+            int r = random.nextInt(255);
+            int gr = 100 + random.nextInt(155);
+            int b = 50 + random.nextInt(205);
+            for (int level = 0; level < ALPHA_LEVELS; level++) {
+                int a = 255 * (level + 1) / ALPHA_LEVELS;
+                Color[] colors = { new Color(r, gr, b, a), new Color(r, gr, b, a), new Color(r, gr, b, a / 3),
+                    new Color(r, gr, b, 0) };
+                for (int k = 0; k < SIZE_CLASSES; k++) {
+                    float glow = GLOW * classRadius[k];
+                    float center = k * cell + cell / 2f, middle = (c * ALPHA_LEVELS + level) * cell + cell / 2f;
+                    float[] fractions = { 0f, 1 / GLOW - 0.05f, 1 / GLOW + 0.05f, 1f };
+                    g2.setPaint(new RadialGradientPaint(center, middle, glow, fractions, colors));
+                    g2.fillRect(k * cell, (c * ALPHA_LEVELS + level) * cell, cell, cell);
+                }
+            }
+        }
+        g2.dispose();
+    }
+}
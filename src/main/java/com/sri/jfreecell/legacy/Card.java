@@ -0,0 +1,25 @@
+package com.sri.jfreecell.legacy;
+
+import java.io.Serializable;
+
+/**
+ * Card as serialized by the versions saving the whole model, only read back by {@link LegacyState}.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+final class Card implements Serializable {
+    private static final long serialVersionUID = -2942119585109171160L;
+
+    // The enums are read as is, but are not visible from this package.
+    private Enum<?> face;
+    private Enum<?> suit;
+
+    int getId() {
+        return suit.ordinal() * 13 + face.ordinal();
+    }
+
+    int getSuit() {
+        return suit.ordinal();
+    }
+}
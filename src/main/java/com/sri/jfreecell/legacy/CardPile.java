@@ -0,0 +1,28 @@
+package com.sri.jfreecell.legacy;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Card pile as serialized by the versions saving the whole model, see {@link LegacyState}.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+class CardPile implements Serializable {
+    private static final long serialVersionUID = 3039382357994794527L;
+
+    private ArrayList<Card> cards;
+
+    int size() {
+        return cards != null ? cards.size() : 0;
+    }
+
+    Card get(int i) {
+        return cards.get(i);
+    }
+
+    Card peekTop() {
+        return cards.get(cards.size() - 1);
+    }
+}
@@ -0,0 +1,11 @@
+package com.sri.jfreecell.legacy;
+
+/**
+ * Serialized subclass of {@link CardPile}, see {@link LegacyState}.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+class CardPileFoundation extends CardPile {
+    private static final long serialVersionUID = -5609208267476759214L;
+}
@@ -0,0 +1,11 @@
+package com.sri.jfreecell.legacy;
+
+/**
+ * Serialized subclass of {@link CardPile}, see {@link LegacyState}.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+class CardPileFreeCell extends CardPile {
+    private static final long serialVersionUID = -6462488239384705042L;
+}
@@ -0,0 +1,11 @@
+package com.sri.jfreecell.legacy;
+
+/**
+ * Serialized subclass of {@link CardPile}, see {@link LegacyState}.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+class CardPileTableau extends CardPile {
+    private static final long serialVersionUID = -3457695861280593662L;
+}
@@ -0,0 +1,21 @@
+package com.sri.jfreecell.legacy;
+
+import java.io.Serializable;
+
+/**
+ * Model as serialized by the versions saving the whole model, with only the fields needed to resume the game. The
+ * other fields of the stream are skipped.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+final class GameModel implements Serializable {
+    private static final long serialVersionUID = -6674914038491480772L;
+
+    CardPile[] freeCells;
+    CardPile[] tableau;
+    CardPile[] foundation;
+    int numeroJogadas;
+    boolean autoComplete;
+    int gameNo;
+}
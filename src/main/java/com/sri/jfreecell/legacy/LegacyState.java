@@ -0,0 +1,105 @@
+package com.sri.jfreecell.legacy;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+
+import com.sri.jfreecell.engine.BoardState;
+import com.sri.jfreecell.engine.SavedGame;
+
+/**
+ * Reads the game saved by the versions serializing the whole model (state.ser), to migrate it once to a
+ * {@link SavedGame}.<br>
+ * The stream names classes of the game package which no longer match its content, so they are read into the frozen
+ * copies of this package instead, which have the same simple names and serial version ids. Only the position, game
+ * number and counters are kept; those files had no move history.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public final class LegacyState {
+
+    private static final String PACKAGE = "com.sri.jfreecell.";
+    private static final String[] CLASSES = { "GameModel", "Card", "CardPile", "CardPileTableau",
+        "CardPileFreeCell", "CardPileFoundation" };
+
+    private LegacyState() {
+    }
+
+    /**
+     * Maps the serialized game classes to the copies of this package.
+     */
+    private static final class LegacyInputStream extends ObjectInputStream {
+
+        LegacyInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            for (String legacy : CLASSES) {
+                // Arrays of piles are named [Lcom.sri.jfreecell.CardPile;
+                int i = name.indexOf(PACKAGE + legacy);
+                int end = i + PACKAGE.length() + legacy.length();
+                if (i >= 0 && (end == name.length() || name.charAt(end) == ';')) {
+                    String mapped = name.substring(0, i) + LegacyState.class.getPackage().getName() + "." + legacy
+                        + name.substring(end);
+                    return Class.forName(mapped, false, LegacyState.class.getClassLoader());
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+
+    /**
+     * Reads a legacy state file.
+     *
+     * @param file
+     * @return game at its saved position, with an empty history
+     * @throws IOException
+     *             if the file can not be read or is not a saved model
+     */
+    public static SavedGame read(File file) throws IOException {
+        GameModel model;
+        try (ObjectInputStream in = new LegacyInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            model = (GameModel) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a saved game: " + file, e);
+        }
+        try {
+            BoardState board = toBoardState(model);
+            return new SavedGame(model.gameNo, null, board, new int[0], 0, board, model.numeroJogadas,
+                model.autoComplete);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted saved game: " + file, e);
+        }
+    }
+
+    private static BoardState toBoardState(GameModel model) {
+        int[] cells = new int[model.freeCells.length];
+        for (int i = 0; i < cells.length; i++) {
+            CardPile pile = model.freeCells[i];
+            cells[i] = pile.size() > 0 ? pile.peekTop().getId() : BoardState.EMPTY;
+        }
+        int[][] columns = new int[model.tableau.length][];
+        for (int i = 0; i < columns.length; i++) {
+            CardPile pile = model.tableau[i];
+            columns[i] = new int[pile.size()];
+            for (int j = 0; j < columns[i].length; j++) {
+                columns[i][j] = pile.get(j).getId();
+            }
+        }
+        int[] foundations = new int[model.foundation.length];
+        for (CardPile pile : model.foundation) {
+            if (pile.size() > 0) {
+                foundations[pile.peekTop().getSuit()] = pile.size();
+            }
+        }
+        return BoardState.create(cells, columns, foundations);
+    }
+}
@@ -0,0 +1,303 @@
+package com.sri.jfreecell.solver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.BitSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sri.jfreecell.Deal;
+import com.sri.jfreecell.DealPack;
+import com.sri.jfreecell.engine.BoardState;
+import com.sri.jfreecell.engine.Moves;
+
+/**
+ * Headless solver of deal ranges.<br>
+ * Usage: {@code --solve <first>-<last> [--threads N] [--out file.csv] [--pack file.fcpk] [--nodes N] [--millis N]
+ * [--table MB]}.
+ * <br>
+ * Deals are solved one independent search each on a work-stealing fork/join pool. Results are appended to a CSV file
+ * as they finish ({@code deal,status,moves,nodes,millis,solution}), so an interrupted run resumes by skipping the deals
+ * already in the file. The {@code --table} size is the memory of all tables of the batch: it is split evenly across
+ * the worker threads, each having its own off-heap {@link TranspositionTable} of that share. A search finds its table
+ * as if new, so the result of a deal does not depend on the scheduling of the threads; it only depends on their number
+ * through the size of the share.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public class BatchSolver {
+
+    public static final String OPTION = "--solve";
+
+    private static final String HEADER = "deal,status,moves,nodes,millis,solution";
+    /** Deals solved by one task before it stops splitting. */
+    private static final int BATCH = 16;
+    private static final long PROGRESS_MILLIS = 5000;
+    /** Memory of all the tables of a batch, when not given. */
+    private static final long DEFAULT_TABLE_BYTES = 256L << 20;
+
+    private final long first;
+    private final long last;
+    private final DealPack pack;
+    private final int maxNodes;
+    private final long maxMillis;
+    /** Memory of all the tables. */
+    private final long tableBytes;
+    /** Share of each worker thread, set by {@link #run(File, int)} before the workers start. */
+    private long threadTableBytes;
+    /** Table of each worker thread, allocated on its first deal. */
+    private final ThreadLocal<TranspositionTable> tables = new ThreadLocal<TranspositionTable>() {
+        @Override
+        protected TranspositionTable initialValue() {
+            return new TranspositionTable(threadTableBytes);
+        }
+    };
+    private final BitSet done = new BitSet();
+    private Writer out;
+
+    private final AtomicLong solvedCount = new AtomicLong();
+    private final AtomicLong finishedCount = new AtomicLong();
+
+    public BatchSolver(long first, long last, DealPack pack, int maxNodes, long maxMillis, long tableBytes) {
+        this.first = first;
+        this.last = last;
+        this.pack = pack;
+        this.maxNodes = maxNodes;
+        this.maxMillis = maxMillis;
+        this.tableBytes = tableBytes;
+    }
+
+    /**
+     * Solves a range of deals.
+     */
+    private class SolveTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+
+        SolveTask(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < BATCH) {
+                for (long deal = from; deal <= to; deal++) {
+                    if (!done.get((int) (deal - first))) {
+                        solve(deal);
+                    }
+                }
+            } else {
+                long mid = (from + to) >>> 1;
+                invokeAll(new SolveTask(from, mid), new SolveTask(mid + 1, to));
+            }
+        }
+    }
+
+    /**
+     * Runs the batch.
+     *
+     * @param file
+     *            result file, created or resumed
+     * @param threads
+     *            no of worker threads, sharing the memory of the tables
+     * @throws IOException
+     */
+    public void run(File file, int threads) throws IOException {
+        threadTableBytes = tableBytes / threads;
+        long skipped = resume(file);
+        long total = last - first + 1 - skipped;
+        System.out.println("Solving " + total + " deals with " + threads + " threads, " + (tableBytes >> 20)
+            + " MB of tables (" + (threadTableBytes >> 10) + " KB per thread)"
+            + (skipped > 0 ? ", " + skipped + " already in " + file : "") + " ...");
+
+        out = new BufferedWriter(new FileWriter(file, true));
+        if (file.length() == 0) {
+            out.write(HEADER + "\n");
+            out.flush();
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.currentTimeMillis();
+        try {
+            ForkJoinTask<Void> task = pool.submit(new SolveTask(first, last));
+            while (true) {
+                try {
+                    task.get(PROGRESS_MILLIS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    progress(total, start);
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException("Batch failed", e);
+        } finally {
+            pool.shutdown();
+            synchronized (this) {
+                out.close();
+            }
+        }
+        progress(total, start);
+        System.out.println("Done: " + solvedCount.get() + " of " + finishedCount.get() + " deals solved, results in "
+            + file);
+    }
+
+    private void progress(long total, long start) {
+        long finished = finishedCount.get();
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        System.out.printf("%d/%d deals, %d solved, %.1f deals/sec%n", finished, total, solvedCount.get(),
+            finished * 1000.0 / millis);
+    }
+
+    /**
+     * Marks the deals already present in the result file as done.
+     *
+     * @param file
+     * @return no of deals of the range already solved
+     * @throws IOException
+     */
+    private long resume(File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        long count = 0;
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int comma = line.indexOf(',');
+                if (comma <= 0 || !line.endsWith(";")) {
+                    continue; // header or line cut short by an interruption
+                }
+                try {
+                    long deal = Long.parseLong(line.substring(0, comma));
+                    if (deal >= first && deal <= last && !done.get((int) (deal - first))) {
+                        done.set((int) (deal - first));
+                        count++;
+                    }
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+            }
+        }
+        // Do not append to a cut line.
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() > 0) {
+                raf.seek(raf.length() - 1);
+                if (raf.read() != '\n') {
+                    raf.write('\n');
+                }
+            }
+        }
+        return count;
+    }
+
+    private void solve(long deal) {
+        BoardState board = pack != null ? pack.toBoardState(deal) : Deal.toBoardState(deal);
+        Solution solution = new Solver(maxNodes, maxMillis, tables.get()).solve(board);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(deal).append(',').append(solution.getStatus()).append(',')
+            .append(solution.isSolved() ? solution.getMoves().length : 0)
+            .append(',').append(solution.getNodes()).append(',').append(solution.getMillis()).append(',');
+        if (solution.isSolved()) {
+            for (int move : solution.getMoves()) {
+                sb.append(Moves.toString(move)).append(' ');
+            }
+        }
+        // Terminator tells complete lines from cut ones on resume.
+        sb.append(";\n");
+        synchronized (this) {
+            try {
+                out.write(sb.toString());
+                out.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (solution.isSolved()) {
+            solvedCount.incrementAndGet();
+        }
+        finishedCount.incrementAndGet();
+    }
+
+    private static void usage() {
+        System.err.println("Usage: " + OPTION
+            + " <first>-<last> [--threads N] [--out file.csv] [--pack file.fcpk] [--nodes N] [--millis N] [--table MB]");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) {
+        long first = 0, last = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxNodes = Solver.DEFAULT_MAX_NODES;
+        long maxMillis = 0;
+        long tableBytes = DEFAULT_TABLE_BYTES;
+        String outName = null;
+        String packName = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (OPTION.equals(arg)) {
+                    String range = args[++i];
+                    int dash = range.indexOf('-');
+                    first = Long.parseLong(dash > 0 ? range.substring(0, dash) : range);
+                    last = dash > 0 ? Long.parseLong(range.substring(dash + 1)) : first;
+                } else if ("--threads".equals(arg)) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if ("--out".equals(arg)) {
+                    outName = args[++i];
+                } else if ("--pack".equals(arg)) {
+                    packName = args[++i];
+                } else if ("--nodes".equals(arg)) {
+                    maxNodes = Integer.parseInt(args[++i]);
+                } else if ("--millis".equals(arg)) {
+                    maxMillis = Long.parseLong(args[++i]);
+                } else if ("--table".equals(arg)) {
+                    tableBytes = Long.parseLong(args[++i]) << 20;
+                } else {
+                    usage();
+                }
+            }
+        } catch (RuntimeException e) {
+            usage();
+        }
+        if (first < 1 || last < first || last - first >= Integer.MAX_VALUE || threads < 1) {
+            usage();
+        }
+
+        DealPack pack = null;
+        try {
+            if (packName != null) {
+                pack = DealPack.open(new File(packName));
+                if (last > pack.size()) {
+                    System.err.println("Pack " + pack.getName() + " has only " + pack.size() + " deals");
+                    System.exit(1);
+                }
+            } else if (last > Deal.MAX_DEAL) {
+                System.err.println("Deal number out of range: " + last);
+                System.exit(1);
+            }
+            File file = new File(outName != null ? outName : "solve-" + first + "-" + last + ".csv");
+            new BatchSolver(first, last, pack, maxNodes, maxMillis, tableBytes).run(file, threads);
+            if (pack != null) {
+                pack.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.sri.jfreecell.solver;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.sri.jfreecell.engine.BoardState;
+
+/**
+ * Analyses positions in the background so hints are ready before they are asked for.<br>
+ * One search runs at a time on a low priority daemon thread; starting a new analysis, or cancelling, stops the
+ * previous one. Finished results are cached by position hash, so going back to a position (undo) answers at once.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public class HintService {
+
+    private static final int CACHE_SIZE = 4096;
+    private static final long MAX_MILLIS = 5000;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "hint");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private final Solver solver = new Solver(Solver.DEFAULT_MAX_NODES, MAX_MILLIS);
+    private final Map<Long, Integer> cache = Collections.synchronizedMap(new LinkedHashMap<Long, Integer>(16,
+        0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    });
+
+    private Future<?> task;
+    private long taskKey;
+    /** Position of the task, which its best move is checked against. */
+    private BoardState taskBoard;
+
+    public Solver getSolver() {
+        return solver;
+    }
+
+    /**
+     * Starts analysing a position, unless it is already known or being analysed.
+     *
+     * @param board
+     *            position
+     * @param key
+     *            position hash
+     */
+    public synchronized void analyse(final BoardState board, final long key) {
+        if (cache.containsKey(key) || (task != null && !task.isDone() && taskKey == key)) {
+            return;
+        }
+        cancel();
+        taskKey = key;
+        taskBoard = board;
+        task = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                Solution solution = solver.solve(board);
+                // A cancelled search only has a partial answer.
+                if (!solver.isCancelled()) {
+                    cache.put(key, solution.getFirstMove());
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the running analysis, the board changed.
+     */
+    public synchronized void cancel() {
+        if (task != null) {
+            task.cancel(false);
+            solver.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Gets the hint of a position without waiting.
+     *
+     * @param key
+     *            position hash
+     * @return first move of the solution or of the best line found so far, -1 if none is known yet
+     */
+    public synchronized int getHint(long key) {
+        Integer move = cache.get(key);
+        if (move != null) {
+            return move;
+        }
+        if (task != null && taskKey == key) {
+            // Until the task starts, the solver still holds the line of the previous position.
+            return solver.getBestMove(taskBoard);
+        }
+        return -1;
+    }
+}
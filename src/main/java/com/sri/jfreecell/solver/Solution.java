@@ -0,0 +1,78 @@
+package com.sri.jfreecell.solver;
+
+import com.sri.jfreecell.engine.Moves;
+
+/**
+ * Result of a {@link Solver} search.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public class Solution {
+
+    public enum Status {
+        /** The moves lead to a won game. */
+        SOLVED,
+        /** The whole search space was explored without a win. */
+        UNSOLVABLE,
+        /** The node or time budget ran out, or the search was cancelled. The moves lead to the best position found. */
+        ABORTED
+    }
+
+    private final Status status;
+    private final int[] moves;
+    private final long nodes;
+    private final long millis;
+
+    public Solution(Status status, int[] moves, long nodes, long millis) {
+        this.status = status;
+        this.moves = moves;
+        this.nodes = nodes;
+        this.millis = millis;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSolved() {
+        return status == Status.SOLVED;
+    }
+
+    /**
+     * Gets the player moves of the line, see {@link Moves}. Automatic moves to the foundation are not included.
+     *
+     * @return moves, possibly empty
+     */
+    public int[] getMoves() {
+        return moves;
+    }
+
+    /**
+     * Gets the first move of the line.
+     *
+     * @return move, or -1 if there is none
+     */
+    public int getFirstMove() {
+        return moves.length > 0 ? moves[0] : -1;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(status).append(" in ").append(moves.length).append(" moves, ").append(nodes).append(" nodes, ")
+            .append(millis).append(" ms:");
+        for (int move : moves) {
+            sb.append(' ').append(Moves.toString(move));
+        }
+        return sb.toString();
+    }
+}
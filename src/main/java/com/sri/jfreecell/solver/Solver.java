@@ -0,0 +1,236 @@
+package com.sri.jfreecell.solver;
+
+import static com.sri.jfreecell.engine.BoardState.rank;
+import static com.sri.jfreecell.engine.Moves.NO_OF_COLUMNS;
+import static com.sri.jfreecell.engine.Moves.NO_OF_FREECELLS;
+
+import java.util.PriorityQueue;
+
+import com.sri.jfreecell.engine.BoardState;
+import com.sri.jfreecell.engine.MoveGenerator;
+import com.sri.jfreecell.engine.Zobrist;
+
+/**
+ * Best-first (weighted A*) FreeCell solver.<br>
+ * Works on immutable {@link BoardState} copies only. Successors come from the {@link MoveGenerator}, with the same
+ * rules as the game model, and every move is followed by the automatic moves to the foundation, so a solution line can
+ * be replayed in the game as is. Positions are deduplicated by their canonical key in a {@link TranspositionTable},
+ * which serves one search at a time: solvers running in parallel need a table each. The search stops when the node or
+ * time budget runs out, or when cancelled from another thread.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public class Solver {
+
+    public static final int DEFAULT_MAX_NODES = 200000;
+    public static final long DEFAULT_MAX_MILLIS = 2000;
+
+    /** Weight of the heuristic over the path length; higher finds solutions faster but longer. */
+    private static final int WEIGHT = 3;
+
+    private int maxNodes = DEFAULT_MAX_NODES;
+    private long maxMillis = DEFAULT_MAX_MILLIS;
+    private TranspositionTable table;
+    private volatile boolean cancelled;
+    /** First move of the best line of the running or last search, with the position searched. */
+    private volatile BestMove bestMove = new BestMove(null, -1);
+
+    /**
+     * Best first move of a search, read at once with the position it belongs to.
+     */
+    private static final class BestMove {
+        final BoardState start;
+        final int move;
+
+        BestMove(BoardState start, int move) {
+            this.start = start;
+            this.move = move;
+        }
+    }
+
+    /**
+     * Search node: a position reached by a move from its parent.
+     */
+    private static final class Node implements Comparable<Node> {
+        final BoardState board;
+        final Node parent;
+        final int move;
+        final int depth;
+        final int cost;
+        final int score;
+
+        Node(BoardState board, Node parent, int move, int cost) {
+            this.board = board;
+            this.parent = parent;
+            this.move = move;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+            this.cost = cost;
+            this.score = depth + WEIGHT * cost;
+        }
+
+        @Override
+        public int compareTo(Node o) {
+            return score != o.score ? Integer.compare(score, o.score) : Integer.compare(cost, o.cost);
+        }
+    }
+
+    public Solver() {
+    }
+
+    public Solver(int maxNodes, long maxMillis) {
+        this.maxNodes = maxNodes;
+        this.maxMillis = maxMillis;
+    }
+
+    public Solver(int maxNodes, long maxMillis, TranspositionTable table) {
+        this(maxNodes, maxMillis);
+        this.table = table;
+    }
+
+    /**
+     * Gets the table of visited positions, allocated on first use when none was given.
+     *
+     * @return table
+     */
+    public TranspositionTable getTable() {
+        if (table == null) {
+            table = new TranspositionTable(TranspositionTable.DEFAULT_BYTES);
+        }
+        return table;
+    }
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    public void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public void setMaxMillis(long maxMillis) {
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * Stops a running search; it returns with the best line found so far.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Gets the first move of the best line found so far by the search of a position. Safe to call from any thread.
+     *
+     * @param start
+     *            position given to {@link #solve(BoardState)}, compared by identity
+     * @return move, or -1 if there is none yet or the last search started is not that of the position
+     */
+    public int getBestMove(BoardState start) {
+        BestMove best = bestMove;
+        return best.start == start ? best.move : -1;
+    }
+
+    /**
+     * Searches a solution.
+     *
+     * @param start
+     *            position to solve, automatic moves not yet played
+     * @return solution, or best line found when aborted
+     */
+    public Solution solve(BoardState start) {
+        cancelled = false;
+        bestMove = new BestMove(start, -1);
+        long begin = System.currentTimeMillis();
+        long deadline = maxMillis > 0 ? begin + maxMillis : Long.MAX_VALUE;
+
+        PriorityQueue<Node> open = new PriorityQueue<Node>();
+        TranspositionTable seen = getTable();
+        int generation = seen.newGeneration();
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        MoveGenerator generator = new MoveGenerator();
+
+        BoardState board = start.autoplay();
+        Node root = new Node(board, null, -1, cost(board));
+        Node best = root;
+        open.add(root);
+        seen.visit(Zobrist.canonicalKey(board), 0, generation);
+
+        long nodes = 0;
+        while (!open.isEmpty()) {
+            Node node = open.poll();
+            if (node.board.isSolved()) {
+                bestMove = new BestMove(start, firstMove(node));
+                return result(Solution.Status.SOLVED, node, nodes, begin);
+            }
+            if (nodes >= maxNodes || cancelled || ((nodes & 0x3FF) == 0 && System.currentTimeMillis() > deadline)) {
+                return result(Solution.Status.ABORTED, best, nodes, begin);
+            }
+            nodes++;
+
+            generator.reset(node.board);
+            int count = generator.generate(moves);
+            for (int i = 0; i < count; i++) {
+                BoardState next = node.board.apply(moves[i]).autoplay();
+                if (!seen.visit(Zobrist.canonicalKey(next), node.depth + 1, generation)) {
+                    continue;
+                }
+                Node child = new Node(next, node, moves[i], cost(next));
+                if (child.cost < best.cost) {
+                    best = child;
+                    bestMove = new BestMove(start, firstMove(child));
+                }
+                open.add(child);
+            }
+        }
+        return result(Solution.Status.UNSOLVABLE, best.board.isSolved() ? best : root, nodes, begin);
+    }
+
+    private static int firstMove(Node node) {
+        while (node.parent != null && node.parent.parent != null) {
+            node = node.parent;
+        }
+        return node.move;
+    }
+
+    private Solution result(Solution.Status status, Node node, long nodes, long begin) {
+        int[] line = new int[node.depth];
+        for (Node n = node; n.parent != null; n = n.parent) {
+            line[n.depth - 1] = n.move;
+        }
+        return new Solution(status, line, nodes, System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * Estimates how far a position is from being solved: cards still to move to the foundation, plus cards lying
+     * above a lower card of their column, plus occupied free cells.
+     *
+     * @param board
+     * @return estimate, 0 when solved
+     */
+    static int cost(BoardState board) {
+        int cost = BoardState.NO_OF_CARDS - board.getCardsOnFoundation();
+        for (int c = 0; c < NO_OF_COLUMNS; c++) {
+            int height = board.getHeight(c);
+            int min = Integer.MAX_VALUE;
+            for (int d = 0; d < height; d++) {
+                int rank = rank(board.getCard(c, d));
+                if (rank > min) {
+                    cost++;
+                } else {
+                    min = rank;
+                }
+            }
+        }
+        cost += NO_OF_FREECELLS - board.getEmptyFreeCells();
+        return cost;
+    }
+}
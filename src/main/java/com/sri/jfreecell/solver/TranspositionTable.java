@@ -0,0 +1,113 @@
+package com.sri.jfreecell.solver;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-size, off-heap table of visited positions.<br>
+ * Entries live in a direct {@link ByteBuffer} of at most the given number of bytes, so millions of positions cost no
+ * heap objects and no GC work. Each 16 byte entry holds a check word and a data word (search depth, generation); the
+ * check word is the position key xor the data word. Keys are probed over a few consecutive slots; a new key takes the
+ * first slot that is empty or left by an earlier search, or else replaces the deepest entry.<br>
+ * Each search takes a new generation and entries of other generations count as empty, so the table never needs
+ * clearing and a search finds it as if it were new: its result does not depend on the searches run before. A table
+ * serves one search at a time; concurrent searches need a table each.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public final class TranspositionTable {
+
+    public static final long DEFAULT_BYTES = 32L << 20;
+
+    private static final int ENTRY_BYTES = 16;
+    private static final int PROBES = 4;
+    private static final long USED = 1L << 63;
+    private static final int MAX_DEPTH = 0xFFFF;
+
+    private final ByteBuffer buffer;
+    private final int mask;
+    private final AtomicInteger generations = new AtomicInteger();
+
+    /**
+     * Allocates the table.
+     *
+     * @param maxBytes
+     *            upper bound of the memory used, rounded down to a power of two entries (1 GB at most)
+     */
+    public TranspositionTable(long maxBytes) {
+        long entries = Math.max(PROBES, Math.min(maxBytes, 1L << 30) / ENTRY_BYTES);
+        int capacity = Integer.highestOneBit((int) entries);
+        buffer = ByteBuffer.allocateDirect(capacity * ENTRY_BYTES).order(ByteOrder.nativeOrder());
+        mask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public long getBytes() {
+        return (long) buffer.capacity();
+    }
+
+    /**
+     * Starts a new search.
+     *
+     * @return generation to pass to {@link #visit(long, int, int)}
+     */
+    public int newGeneration() {
+        return generations.incrementAndGet();
+    }
+
+    /**
+     * Records a position reached by a search, unless it was already reached at the same or a lower depth.
+     *
+     * @param key
+     *            position key
+     * @param depth
+     *            no of moves from the search root
+     * @param generation
+     *            search generation
+     * @return true if the position is new or reached by a shorter line
+     */
+    public boolean visit(long key, int depth, int generation) {
+        long data = USED | ((generation & 0xFFFFFFFFL) << 16) | Math.min(depth, MAX_DEPTH);
+        int free = -1;
+        int victim = -1;
+        int victimDepth = -1;
+        for (int i = 0; i < PROBES; i++) {
+            int offset = (((int) key + i) & mask) * ENTRY_BYTES;
+            long old = buffer.getLong(offset + 8);
+            if (old == 0 || generation(old) != generation) {
+                if (free < 0) {
+                    free = offset;
+                }
+            } else if ((buffer.getLong(offset) ^ old) == key) {
+                if (depth(old) <= depth) {
+                    return false;
+                }
+                write(offset, key, data);
+                return true;
+            } else if (depth(old) > victimDepth) {
+                victimDepth = depth(old);
+                victim = offset;
+            }
+        }
+        write(free >= 0 ? free : victim, key, data);
+        return true;
+    }
+
+    private void write(int offset, long key, long data) {
+        buffer.putLong(offset + 8, data);
+        buffer.putLong(offset, key ^ data);
+    }
+
+    private static int depth(long data) {
+        return (int) (data & MAX_DEPTH);
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> 16);
+    }
+}
@@ -8,8 +8,11 @@ import java.io.ObjectOutputStream;
 
 public class FileUtil {
 
+    /** Model serialized by older versions, only read to migrate it. */
     public static final String STATE_FILE = "state.ser";
+    public static final String SAVE_FILE = "state.fcs";
     public static final String STAT_FILE = "usrstat.ser";
+    public static final String JOURNAL_FILE = "journal.bin";
 
     public static String getAppDirectory() {
         String userDir = System.getProperty("user.home");
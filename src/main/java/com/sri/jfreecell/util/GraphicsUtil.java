@@ -0,0 +1,68 @@
+package com.sri.jfreecell.util;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+
+public class GraphicsUtil {
+
+    private static final BasicStroke OUTLINE_STROKE = new BasicStroke(3);
+    private static final int ALPHA_LEVELS = 256;
+    private static final AlphaComposite[] COMPOSITES = new AlphaComposite[ALPHA_LEVELS];
+
+    static {
+        for (int i = 0; i < ALPHA_LEVELS; i++) {
+            COMPOSITES[i] = AlphaComposite.SrcOver.derive(i / (float) (ALPHA_LEVELS - 1));
+        }
+    }
+
+    /**
+     * Gets a shared source-over composite, so painting does not create one per frame
+     *
+     * @param opacity
+     *            0 to 1, rounded to 1/255
+     * @return AlphaComposite composite
+     */
+    public static AlphaComposite getComposite(float opacity) {
+        int level = Math.round(opacity * (ALPHA_LEVELS - 1));
+        return COMPOSITES[Math.max(0, Math.min(ALPHA_LEVELS - 1, level))];
+    }
+
+    /**
+     * Draws an antialiased translucent outline, restoring the state of the graphics afterwards instead of working on
+     * a copy of it. Nothing is allocated.
+     *
+     * @param g
+     *            graphics
+     * @param shape
+     *            outline
+     * @param color
+     *            color
+     * @param opacity
+     *            opacity
+     */
+    public static void drawOutline(Graphics g, Shape shape, Color color, float opacity) {
+        Graphics2D g2 = (Graphics2D) g;
+        Stroke stroke = g2.getStroke();
+        Composite composite = g2.getComposite();
+        Color oldColor = g2.getColor();
+        Object antialiasing = g2.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+        g2.setStroke(OUTLINE_STROKE);
+        g2.setColor(color);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setComposite(getComposite(opacity));
+        g2.draw(shape);
+        g2.setStroke(stroke);
+        g2.setComposite(composite);
+        g2.setColor(oldColor);
+        if (antialiasing != null) {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+        }
+    }
+}
@@ -26,4 +26,32 @@ public class ImageUtil {
         g2.dispose();
         return resizedImg;
     }
+
+    /**
+     * Resizes given image to given width and height, in halving steps when shrinking to less than half, as a single
+     * bilinear pass would skip source pixels.
+     * 
+     * @param srcImg
+     *            image source
+     * @param w
+     *            width
+     * @param h
+     *            height
+     * @return BufferedImage resized image
+     */
+    public static BufferedImage getScaledImage(BufferedImage srcImg, int w, int h) {
+        BufferedImage img = srcImg;
+        do {
+            int curW = img.getWidth() > 2 * w ? img.getWidth() / 2 : w;
+            int curH = img.getHeight() > 2 * h ? img.getHeight() / 2 : h;
+            BufferedImage resizedImg = new BufferedImage(curW, curH, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2 = resizedImg.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2.drawImage(img, 0, 0, curW, curH, null);
+            g2.dispose();
+            img = resizedImg;
+        } while (img.getWidth() != w || img.getHeight() != h);
+        return img;
+    }
 }
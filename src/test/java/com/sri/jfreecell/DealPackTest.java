@@ -0,0 +1,68 @@
+package com.sri.jfreecell;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a packed deal list reads back as the computed deals, and that a pack with a broken deal is refused.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public class DealPackTest {
+
+    private File text;
+    private File pack;
+
+    @Before
+    public void createPack() throws IOException {
+        text = File.createTempFile("deals", ".txt");
+        pack = File.createTempFile("deals", DealPack.EXTENSION);
+        try (Writer out = new FileWriter(text)) {
+            for (long deal = 1; deal <= 3; deal++) {
+                out.write(deal + ":");
+                for (int j : Deal.shuffle(deal)) {
+                    out.write(" " + j);
+                }
+                out.write("\n");
+            }
+        }
+        assertEquals(3, DealPack.convert(text, pack));
+    }
+
+    @After
+    public void deleteFiles() {
+        text.delete();
+        pack.delete();
+    }
+
+    @Test
+    public void readsTheDeals() throws IOException {
+        try (DealPack deals = DealPack.open(pack)) {
+            assertEquals(3, deals.size());
+            for (long deal = 1; deal <= 3; deal++) {
+                assertEquals(Deal.toBoardState(deal), deals.toBoardState(deal));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsRepeatedCard() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(pack, "rw")) {
+            // Second card of deal 2 replaced by its first one.
+            raf.seek(16 + 52);
+            int first = raf.read();
+            raf.write(first);
+        }
+        DealPack.open(pack).close();
+    }
+}
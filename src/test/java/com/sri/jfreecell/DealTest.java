@@ -0,0 +1,73 @@
+package com.sri.jfreecell;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.sri.jfreecell.engine.BoardState;
+
+/**
+ * Checks the computed deals against the published MS FreeCell layouts.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public class DealTest {
+
+    private static final String DEAL_1 = ""
+        + "JD 2D 9H JC 5D 7H 7C 5H\n"
+        + "KD KC 9S 5S AD QC KH 3H\n"
+        + "2S KS 9D QD JS AS AH 3C\n"
+        + "4C 5C TS QH 4H AC 4D 7S\n"
+        + "3S TD 4S TH 8H 2C JH 7D\n"
+        + "6D 8S 8D QS 6C 3D 8C TC\n"
+        + "6S 9C 2H 6H\n";
+
+    private static final String DEAL_617 = ""
+        + "7D AD 5C 3S 5S 8C 2D AH\n"
+        + "TD 7S QD AC 6D 8H AS KH\n"
+        + "TH QC 3H 9D 6S 8D 3D TC\n"
+        + "KD 5H 9S 3C 8S 7H 4D JS\n"
+        + "4C QS 9C 9H 7C 6H 2C 2S\n"
+        + "4S TS 2H 5D JC 6C JH QH\n"
+        + "JD KS KC 4H\n";
+
+    private static final String RANKS = "A23456789TJQK";
+    private static final String SUITS = "CDHS";
+
+    @Test
+    public void dealsMatchMsFreeCell() {
+        assertEquals(DEAL_1, layout(Deal.cards(Deal.shuffle(1))));
+        assertEquals(DEAL_617, layout(Deal.cards(Deal.shuffle(617))));
+    }
+
+    @Test
+    public void boardStateHoldsTheDeal() {
+        byte[] codes = Deal.cards(Deal.shuffle(617));
+        BoardState board = Deal.toBoardState(617);
+        for (int i = 0; i < codes.length; i++) {
+            int id = board.getCard(i % 8, i / 8);
+            assertEquals(codes[i] & 3, BoardState.suit(id));
+            assertEquals(codes[i] >> 2, BoardState.rank(id));
+        }
+        assertEquals(7, board.getHeight(3));
+        assertEquals(6, board.getHeight(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDealZero() {
+        Deal.shuffle(0);
+    }
+
+    /**
+     * Writes dealt cards as the published layouts: rows of eight, dealt from left to right.
+     */
+    private static String layout(byte[] codes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < codes.length; i++) {
+            sb.append(RANKS.charAt(codes[i] >> 2)).append(SUITS.charAt(codes[i] & 3));
+            sb.append(i % 8 == 7 || i == codes.length - 1 ? "\n" : " ");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,141 @@
+package com.sri.jfreecell.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sri.jfreecell.Deal;
+
+/**
+ * Checks that a journal replays the records written to it, and that a record cut by a crash only loses that record.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public class MoveJournalTest {
+
+    private static final int MOVE_1 = Moves.encode(8, 4, 1);
+    private static final int MOVE_2 = Moves.encode(9, 5, 1);
+    private static final int MOVE_3 = Moves.encode(10, 6, 1);
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("journal", ".fcjn");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void replaysAllRecords() throws IOException {
+        MoveJournal journal = new MoveJournal(file);
+        journal.start(617, "deals.fcpk", Deal.toBoardState(617));
+        journal.move(MOVE_1);
+        journal.move(MOVE_2);
+        journal.undo();
+        journal.redo();
+        journal.seek(1);
+        journal.close();
+
+        assertEquals("start 617 deals.fcpk, move " + MOVE_1 + ", move " + MOVE_2 + ", undo, redo, seek 1, ",
+            replay());
+    }
+
+    @Test
+    public void stopsAtTruncatedRecord() throws IOException {
+        MoveJournal journal = new MoveJournal(file);
+        journal.start(617, null, Deal.toBoardState(617));
+        journal.move(MOVE_1);
+        journal.move(MOVE_2);
+        journal.move(MOVE_3);
+        journal.close();
+        // The crash cut the last move in the middle.
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 2);
+        }
+
+        assertEquals("start 617 null, move " + MOVE_1 + ", move " + MOVE_2 + ", ", replay());
+    }
+
+    @Test
+    public void rewriteKeepsTheGame() throws IOException {
+        MoveJournal journal = new MoveJournal(file);
+        journal.start(617, null, Deal.toBoardState(617));
+        journal.move(MOVE_1);
+        journal.move(MOVE_2);
+        journal.undo();
+        journal.rewrite(617, null, Deal.toBoardState(617), new int[] { MOVE_1, MOVE_2 }, 1);
+        journal.move(MOVE_3);
+        journal.close();
+
+        assertEquals("start 617 null, move " + MOVE_1 + ", move " + MOVE_2 + ", seek 1, move " + MOVE_3 + ", ",
+            replay());
+    }
+
+    @Test
+    public void keepsLongDealPackPath() throws IOException {
+        StringBuilder path = new StringBuilder();
+        while (path.length() < 20000) {
+            path.append("/baralhos");
+        }
+        path.append("/deals.fcpk");
+        MoveJournal journal = new MoveJournal(file);
+        journal.start(617, path.toString(), Deal.toBoardState(617));
+        journal.move(MOVE_1);
+        journal.rewrite(617, path.toString(), Deal.toBoardState(617), new int[] { MOVE_1 }, 1);
+        journal.move(MOVE_2);
+        journal.close();
+
+        assertEquals("start 617 " + path + ", move " + MOVE_1 + ", move " + MOVE_2 + ", ", replay());
+    }
+
+    /**
+     * Replays the journal, checking its start position.
+     *
+     * @return records, as text
+     */
+    private String replay() throws IOException {
+        final StringBuilder records = new StringBuilder();
+        boolean started = MoveJournal.replay(file, new MoveJournal.Listener() {
+            @Override
+            public void start(long gameNo, String dealPack, BoardState board) {
+                assertEquals(Deal.toBoardState(617), board);
+                records.append("start ").append(gameNo).append(' ').append(dealPack).append(", ");
+            }
+
+            @Override
+            public void move(int move) {
+                records.append("move ").append(move).append(", ");
+            }
+
+            @Override
+            public void undo() {
+                records.append("undo, ");
+            }
+
+            @Override
+            public void redo() {
+                records.append("redo, ");
+            }
+
+            @Override
+            public void seek(int move) {
+                records.append("seek ").append(move).append(", ");
+            }
+        });
+        assertTrue(started);
+        return records.toString();
+    }
+}
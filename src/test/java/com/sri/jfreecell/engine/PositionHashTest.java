@@ -0,0 +1,107 @@
+package com.sri.jfreecell.engine;
+
+import static com.sri.jfreecell.engine.Moves.FREECELL;
+import static com.sri.jfreecell.engine.Moves.TABLEAU;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sri.jfreecell.Deal;
+
+/**
+ * Checks that the hash and canonical key kept up to date move by move are those computed from scratch.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public class PositionHashTest {
+
+    @Test
+    public void incrementalHashMatchesRecomputed() {
+        Random random = new Random(42);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (long deal = 1; deal <= 20; deal++) {
+            BoardState board = Deal.toBoardState(deal);
+            PositionHash hash = new PositionHash();
+            hash.reset(board);
+            MoveGenerator generator = new MoveGenerator();
+            for (int step = 0; step < 200; step++) {
+                generator.reset(board);
+                int n = generator.generate(moves);
+                if (n == 0) {
+                    break;
+                }
+                int move = moves[random.nextInt(n)];
+                BoardState next = board.apply(move);
+                track(hash, board, next, move);
+                board = next;
+                assertEquals("hash of deal " + deal + " at move " + step, Zobrist.hash(board), hash.getHash());
+                assertEquals("key of deal " + deal + " at move " + step, Zobrist.canonicalKey(board),
+                    hash.getCanonicalKey());
+            }
+        }
+    }
+
+    @Test
+    public void canonicalKeyIgnoresColumnOrder() {
+        BoardState board = Deal.toBoardState(617);
+        int[][] columns = new int[Moves.NO_OF_COLUMNS][];
+        for (int c = 0; c < columns.length; c++) {
+            // Reversed order of the columns.
+            int column = columns.length - 1 - c;
+            columns[c] = new int[board.getHeight(column)];
+            for (int d = 0; d < columns[c].length; d++) {
+                columns[c][d] = board.getCard(column, d);
+            }
+        }
+        int[] cells = { BoardState.EMPTY, BoardState.EMPTY, BoardState.EMPTY, BoardState.EMPTY };
+        BoardState mirrored = BoardState.create(cells, columns, new int[Moves.NO_OF_FOUNDATIONS]);
+        assertFalse(board.equals(mirrored));
+        assertNotEquals(Zobrist.hash(board), Zobrist.hash(mirrored));
+        assertEquals(Zobrist.canonicalKey(board), Zobrist.canonicalKey(mirrored));
+    }
+
+    /**
+     * Records a move in the hash the way the game does: the moved cards are removed from the top of the source, then
+     * added on the target.
+     */
+    private static void track(PositionHash hash, BoardState before, BoardState after, int move) {
+        int source = Moves.source(move);
+        int target = Moves.target(move);
+        int count = Moves.count(move);
+        int[] cards = new int[count];
+        for (int i = count - 1; i >= 0; i--) {
+            int depth = depth(before, source) - (count - 1 - i);
+            cards[i] = card(before, source, depth);
+            hash.remove(source, depth, cards[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            hash.add(target, depth(after, target) - (count - 1 - i), cards[i]);
+        }
+    }
+
+    /**
+     * Gets the depth of the top card of a pile.
+     */
+    private static int depth(BoardState board, int pile) {
+        if (Moves.isFreeCell(pile)) {
+            return 0;
+        } else if (Moves.isTableau(pile)) {
+            return board.getHeight(pile - TABLEAU) - 1;
+        }
+        return board.getFoundation(pile) - 1;
+    }
+
+    private static int card(BoardState board, int pile, int depth) {
+        if (Moves.isFreeCell(pile)) {
+            return board.getFreeCell(pile - FREECELL);
+        } else if (Moves.isTableau(pile)) {
+            return board.getCard(pile - TABLEAU, depth);
+        }
+        return pile * BoardState.NO_OF_RANKS + depth;
+    }
+}
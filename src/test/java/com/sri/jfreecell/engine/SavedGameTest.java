@@ -0,0 +1,95 @@
+package com.sri.jfreecell.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sri.jfreecell.Deal;
+
+/**
+ * Checks that a saved game reads back as it was written.
+ *
+ * @author Sateesh Gampala
+ *
+ */
+public class SavedGameTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("saved", ".fcsg");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        BoardState start = Deal.toBoardState(617);
+        int[] moves = play(start, 12);
+        BoardState board = start;
+        for (int i = 0; i < 9; i++) {
+            board = board.apply(moves[i]);
+        }
+        // Three moves undone.
+        new SavedGame(617, "baralhos/ma\u00e7\u00e3.fcpk", start, moves, 9, board, 42, false).write(file);
+
+        SavedGame game = SavedGame.read(file);
+        assertEquals(617, game.getGameNo());
+        assertEquals("baralhos/ma\u00e7\u00e3.fcpk", game.getDealPack());
+        assertEquals(start, game.getStart());
+        assertArrayEquals(moves, game.getMoves());
+        assertEquals(9, game.getPosition());
+        assertEquals(board, game.getBoard());
+        assertEquals(board.getFoundations(), game.getBoard().getFoundations());
+        assertEquals(42, game.getNoOfPlays());
+        assertFalse(game.isAutoComplete());
+    }
+
+    @Test
+    public void roundTripWithoutDealPack() throws IOException {
+        BoardState start = Deal.toBoardState(1);
+        new SavedGame(1, null, start, new int[0], 0, start, 0, true).write(file);
+
+        SavedGame game = SavedGame.read(file);
+        assertNull(game.getDealPack());
+        assertEquals(0, game.getMoves().length);
+        assertEquals(start, game.getBoard());
+        assertTrue(game.isAutoComplete());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        Files.write(file.toPath(), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        SavedGame.read(file);
+    }
+
+    /**
+     * Plays the first legal moves of a position.
+     */
+    private static int[] play(BoardState board, int count) {
+        int[] moves = new int[count];
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        MoveGenerator generator = new MoveGenerator();
+        for (int i = 0; i < count; i++) {
+            generator.reset(board);
+            generator.generate(buffer);
+            moves[i] = buffer[0];
+            board = board.apply(moves[i]);
+        }
+        return moves;
+    }
+}